@@ -0,0 +1,97 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.random.RandomGenerator;
+
+/**
+ * Picks one of several outcomes with fixed odds in constant time, with one
+ * random number (Walker's alias method, built as Vose does).
+ *
+ * Each outcome gets a column of the same height, filled with its own odds
+ * and topped up with those of one other outcome, its alias. A random column
+ * and a random height within it then pick either the column's outcome or
+ * its alias.
+ *
+ */
+final class Alias {
+
+    // The share of each column that is its own outcome, and the outcome
+    // filling the rest
+    private final double[] prob;
+    private final int[] alias;
+
+    /**
+     * Build the table
+     *
+     * @param weights the odds of each outcome, which need not add up to 1
+     */
+    Alias(double... weights) {
+        int n = weights.length;
+        prob = new double[n];
+        alias = new int[n];
+
+        double total = 0;
+        for (double w : weights) {
+            total += w;
+        }
+        double[] scaled = new double[n];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            (scaled[i] < 1 ? small : large).push(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int s = small.pop();
+            int l = large.pop();
+            prob[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] -= 1 - scaled[s];
+            (scaled[l] < 1 ? small : large).push(l);
+        }
+        // What is left is full, up to rounding
+        for (int i : large) {
+            prob[i] = 1;
+            alias[i] = i;
+        }
+        for (int i : small) {
+            prob[i] = 1;
+            alias[i] = i;
+        }
+    }
+
+    /**
+     * Build the table of r.nextInt(r.nextInt(n) + 1), a number below n that
+     * is small more often than not
+     *
+     * @param n the number of outcomes
+     * @return the table
+     */
+    static Alias shrinking(int n) {
+        double[] weights = new double[n];
+        for (int k = 0; k < n; k++) {
+            // nextInt(n) + 1 is m, then k is below m with odds 1/m
+            for (int m = k + 1; m <= n; m++) {
+                weights[k] += 1.0 / m;
+            }
+        }
+        return new Alias(weights);
+    }
+
+    /**
+     * Pick an outcome
+     *
+     * @param r the random numbers
+     * @return the index of the outcome
+     */
+    int sample(RandomGenerator r) {
+        double u = r.nextDouble() * prob.length;
+        int i = (int) u;
+        return u - i < prob[i] ? i : alias[i];
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles many Programs with a single gcc invocation.
+ *
+ * Each Program becomes its own function, gp_0() ... gp_N(), in one translation
+ * unit, laid out exactly as Program.toString() would lay out main(). The
+ * diagnostics are then handed back to each Program by line number, with the
+ * line numbers and function name rewritten to read as they would on its own.
+ *
+ * They are close to what a single compile gives, but not always the same:
+ * gcc's diagnostics depend on the rest of the translation unit, and a batch
+ * can drop a warning, such as -Wdiv-by-zero, that a Program alone would get.
+ * So a batched result is an estimate, which the caches never keep, unless
+ * Fitness.BATCH_VERIFY replaced it with the single compile.
+ *
+ * Programs whose brackets do not balance could spill into their neighbours,
+ * so they are always compiled on their own. If any line of the error output
+ * cannot be attributed, the whole batch falls back to single compiles.
+ *
+ */
+class BatchCompiler {
+
+    // Name of the function holding each Program
+    private static final String PREFIX = "gp_";
+
+    // "./main.cpp:12:5: error: ..."
+    private static final Pattern LOCATION = Pattern.compile("^([^:\\s]+):(\\d+):");
+    // "./main.cpp: In function 'int gp_3()':"
+    private static final Pattern FUNCTION = Pattern.compile("^[^:\\s]+: In function .int " + PREFIX + "(\\d+)\\(\\).:$");
+    // "   12 |    x = 1 ;"
+    private static final Pattern MARGIN = Pattern.compile("^ *(\\d+) \\|");
+    // "      |    ^"
+    private static final Pattern GUTTER = Pattern.compile("^ +\\|");
+    // Any mention of a generated function name
+    private static final Pattern NAME = Pattern.compile(PREFIX + "\\d+\\b");
+
+    // gcc pads line numbers in the margin to at least this width
+    private static final int MARGIN_WIDTH = 5;
+
+    // Counters for the correctness check
+    private static final AtomicLong verified = new AtomicLong();
+    private static final AtomicLong mismatches = new AtomicLong();
+
+    // Dummy constructor to prevent object instances
+    private BatchCompiler() {
+    }
+
+    /**
+     * Compile the Programs together, falling back to single compiles where
+     * the error output cannot be split reliably.
+     *
+     * Batched results are marked inexact. When Fitness.BATCH_VERIFY is set,
+     * every batched result is checked against a single compile, and the
+     * single result, which is exact, is used instead.
+     *
+     * @param programs the Programs to compile
+     * @return the compile result of each Program, in the same order
+     * @throws IOException if gcc cannot be run
+     * @throws InterruptedException if interrupted while waiting for gcc
+     */
+    static CompileResult[] compile(List<Program> programs) throws IOException, InterruptedException {
+        CompileResult[] results = new CompileResult[programs.size()];
+
+        // Keep out anything that could bleed into the next function
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < programs.size(); i++) {
+            if (isolated(programs.get(i))) {
+                batch.add(i);
+            }
+        }
+
+        if (batch.size() > 1) {
+            StringBuilder source = new StringBuilder();
+            int[] start = new int[batch.size() + 1];
+            int line = 1;
+            for (int b = 0; b < batch.size(); b++) {
+                Program program = programs.get(batch.get(b));
+                start[b] = line;
+                source.append("int ").append(PREFIX).append(b).append("(){\n");
+                for (Statement s : program.list()) {
+                    source.append("   ").append(s).append("\n");
+                }
+                source.append("}\n");
+                line += program.size() + 2;
+            }
+            start[batch.size()] = line;
+
+            // No main() to link, and the functions have no return statement
+            List<String> lines = Compiler.run(source.toString(), "-Wno-return-type", "-c");
+            List<List<String>> split = lines == null ? null : attribute(lines, start);
+            if (split != null) {
+                for (int b = 0; b < batch.size(); b++) {
+                    CompileResult counted = Compiler.count(split.get(b));
+                    results[batch.get(b)] = new CompileResult(counted.getErrorWords(), counted.getStdError(), false);
+                }
+            }
+        }
+
+        for (int i = 0; i < programs.size(); i++) {
+            if (results[i] == null) {
+                results[i] = Compiler.compile(programs.get(i).toString());
+            } else if (Fitness.BATCH_VERIFY) {
+                CompileResult expected = Compiler.compile(programs.get(i).toString());
+                verified.incrementAndGet();
+                if (expected.getErrorWords() != results[i].getErrorWords()) {
+                    mismatches.incrementAndGet();
+                    Logger.getLogger(BatchCompiler.class.getName()).log(Level.WARNING,
+                            "Batch counted {0} error words, single compile counted {1}:\n{2}",
+                            new Object[]{results[i].getErrorWords(), expected.getErrorWords(), programs.get(i)});
+                }
+                results[i] = expected;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Checks that a Program renders one line per Statement and that its
+     * brackets balance, so its diagnostics stay inside its own function
+     *
+     * @param program the Program to check
+     * @return true if it is safe to batch
+     */
+    private static boolean isolated(Program program) {
+        Brackets b = program.list().brackets();
+        return b.isBalanced() && !b.hasLineBreak();
+    }
+
+    /**
+     * Split the error output of a batch by function
+     *
+     * @param lines the lines gcc wrote to stderr
+     * @param start the first line of each function, plus one past the last
+     * @return the rewritten lines of each function, or null if ambiguous
+     */
+    private static List<List<String>> attribute(List<String> lines, int[] start) {
+        int n = start.length - 1;
+        List<List<String>> split = new ArrayList<>();
+        for (int b = 0; b < n; b++) {
+            split.add(new ArrayList<>());
+        }
+
+        int current = -1;
+        int width = MARGIN_WIDTH;
+        for (String line : lines) {
+            Matcher m;
+            if ((m = FUNCTION.matcher(line)).matches()) {
+                current = Integer.parseInt(m.group(1));
+                if (current >= n) {
+                    return null;
+                }
+            } else if ((m = LOCATION.matcher(line)).find()) {
+                int global = Integer.parseInt(m.group(2));
+                current = owner(global, start);
+                if (current < 0) {
+                    return null;
+                }
+                line = m.group(1) + ":" + (global - start[current] + 1) + ":" + line.substring(m.end());
+            } else if ((m = MARGIN.matcher(line)).find()) {
+                if (current < 0) {
+                    return null;
+                }
+                int local = Integer.parseInt(m.group(1)) - start[current] + 1;
+                String number = Integer.toString(local);
+                width = Math.max(MARGIN_WIDTH, number.length());
+                line = pad(width - number.length()) + number + line.substring(m.end() - 2);
+            } else if ((m = GUTTER.matcher(line)).find()) {
+                if (current < 0) {
+                    return null;
+                }
+                line = pad(width + 1) + line.substring(m.end() - 1);
+            } else {
+                // e.g. "At global scope:", which no single compile would print
+                return null;
+            }
+            split.get(current).add(NAME.matcher(line).replaceAll("main"));
+        }
+        return split;
+    }
+
+    /**
+     * Find the function containing the given line of the batch
+     *
+     * @return the index of the function, or -1 if outside every function
+     */
+    private static int owner(int line, int[] start) {
+        for (int b = 0; b < start.length - 1; b++) {
+            if (line >= start[b] && line < start[b + 1]) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Make a run of spaces
+     */
+    private static String pad(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the number of batched results checked against a single compile
+     *
+     * @return the verified count
+     */
+    static long getVerified() {
+        return verified.get();
+    }
+
+    /**
+     * Get the number of batched results that disagreed with a single compile
+     *
+     * @return the mismatch count
+     */
+    static long getMismatches() {
+        return mismatches.get();
+    }
+}
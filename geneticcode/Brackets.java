@@ -0,0 +1,133 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+/**
+ * A summary of the parentheses, brackets and braces in a piece of text.
+ *
+ * Cancelling each opening bracket against the closing bracket of the same
+ * kind right after it, over and over, leaves some closing brackets followed
+ * by some opening ones, or a closing bracket right after an opening one of
+ * another kind, which nothing can cancel any more. The summary keeps the
+ * closing and opening brackets left, or just that they can never cancel. The
+ * text is balanced if nothing is left.
+ *
+ * The summary of two pieces of text joined is then() of theirs, so the
+ * summary of a Statement is folded from those of its tokens, and that of a
+ * Program from those of its Statements. It also records whether the text
+ * holds a line break, which BatchCompiler needs to know as well.
+ *
+ */
+class Brackets {
+
+    /**
+     * Text without brackets or line breaks
+     */
+    static final Brackets NONE = new Brackets("", "", false);
+    /**
+     * Text with an opening bracket closed by one of another kind
+     */
+    static final Brackets MISMATCH = new Brackets(")", "(", false);
+
+    // The closing brackets left, then the opening ones
+    private final String close;
+    private final String open;
+    private final boolean breaks;
+
+    private Brackets(String close, String open, boolean breaks) {
+        this.close = close;
+        this.open = open;
+        this.breaks = breaks;
+    }
+
+    /**
+     * Summarize a piece of text
+     *
+     * @param text the text
+     * @return the summary
+     */
+    static Brackets of(String text) {
+        Brackets b = NONE;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '(':
+                case '[':
+                case '{':
+                    b = b.then(new Brackets("", String.valueOf(c), false));
+                    break;
+                case ')':
+                case ']':
+                case '}':
+                    b = b.then(new Brackets(String.valueOf(c), "", false));
+                    break;
+                case '\n':
+                case '\r':
+                    b = b.then(new Brackets("", "", true));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Summarize this text followed by another
+     *
+     * @param next the summary of the text that follows
+     * @return the summary of both
+     */
+    Brackets then(Brackets next) {
+        if (this == MISMATCH || next == MISMATCH) {
+            return MISMATCH;
+        }
+        if (next == NONE) {
+            return this;
+        }
+        if (this == NONE) {
+            return next;
+        }
+        // Close what this left open with what next closes first
+        int i = open.length();
+        int j = 0;
+        while (i > 0 && j < next.close.length()) {
+            if (!matches(open.charAt(i - 1), next.close.charAt(j))) {
+                return MISMATCH;
+            }
+            i--;
+            j++;
+        }
+        String c = j < next.close.length() ? close + next.close.substring(j) : close;
+        String o = i > 0 ? open.substring(0, i) + next.open : next.open;
+        return new Brackets(c, o, breaks || next.breaks);
+    }
+
+    /**
+     * Check if the brackets are balanced, each closing one matching the
+     * last one left open
+     *
+     * @return true if balanced
+     */
+    boolean isBalanced() {
+        return this != MISMATCH && close.isEmpty() && open.isEmpty();
+    }
+
+    /**
+     * Check if the text holds a line break
+     *
+     * @return true if it holds '\n' or '\r'
+     */
+    boolean hasLineBreak() {
+        return breaks;
+    }
+
+    /**
+     * Check if a closing bracket closes an opening one
+     */
+    private static boolean matches(char open, char close) {
+        return (open == '(' && close == ')') || (open == '[' && close == ']') || (open == '{' && close == '}');
+    }
+}
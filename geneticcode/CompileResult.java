@@ -0,0 +1,76 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+/**
+ * The outcome of compiling one Program: the error output from gcc and the
+ * number of words in it.
+ *
+ */
+public class CompileResult {
+
+    /**
+     * Number of words (split by whitespace) in the compiler error output
+     */
+    private final int errorWords;
+    /**
+     * The compiler error output
+     */
+    private final String stdError;
+    /**
+     * False if the count is an estimate rather than what gcc reported
+     */
+    private final boolean exact;
+
+    /**
+     * Construct a new CompileResult
+     *
+     * @param errorWords the number of words in the error output
+     * @param stdError the error output
+     */
+    public CompileResult(int errorWords, String stdError) {
+        this(errorWords, stdError, true);
+    }
+
+    /**
+     * Construct a new CompileResult
+     *
+     * @param errorWords the number of words in the error output
+     * @param stdError the error output
+     * @param exact false if the count is an estimate
+     */
+    public CompileResult(int errorWords, String stdError, boolean exact) {
+        this.errorWords = errorWords;
+        this.stdError = stdError;
+        this.exact = exact;
+    }
+
+    /**
+     * Get the number of words in the error output
+     *
+     * @return the error word count
+     */
+    public int getErrorWords() {
+        return errorWords;
+    }
+
+    /**
+     * Get the error output
+     *
+     * @return the stderr message
+     */
+    public String getStdError() {
+        return stdError;
+    }
+
+    /**
+     * Checks if this result came from gcc, and so can be cached
+     *
+     * @return true if exact, false if estimated
+     */
+    public boolean isExact() {
+        return exact;
+    }
+}
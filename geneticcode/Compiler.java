@@ -0,0 +1,325 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of gcc workers.
+ *
+ * By default each worker thread owns a scratch directory with its own
+ * main.cpp, so Programs can be compiled side by side without racing on shared
+ * files. With Fitness.COMPILE_STDIN set, the program text is piped straight
+ * into gcc and nothing touches the disk. Either way, gcc's output is thrown
+ * away and its stderr is drained on a separate thread, so a flood of
+ * diagnostics cannot fill the pipe while the source is still being written.
+ *
+ */
+class Compiler {
+
+    // Where gcc writes its (unused) output
+    private static final String DISCARD = "/dev/null";
+    // Size of each read from gcc's stderr
+    private static final int CHUNK = 8192;
+
+    // The worker pool, rebuilt if Fitness.WORKERS changes
+    private static ExecutorService pool;
+    private static int poolSize;
+
+    // Threads that read gcc's stderr, one per running gcc
+    private static final ExecutorService drains = Executors.newCachedThreadPool(daemon("gcc-stderr-"));
+
+    // Each worker thread compiles in its own scratch directory
+    private static final ThreadLocal<File> scratch = ThreadLocal.withInitial(Compiler::makeScratch);
+
+    // Dummy constructor to prevent object instances
+    private Compiler() {
+    }
+
+    /**
+     * Get the worker pool, sized by Fitness.WORKERS
+     *
+     * @return the pool of compile workers
+     */
+    static synchronized ExecutorService pool() {
+        int n = Math.max(1, Fitness.WORKERS);
+        if (pool == null || poolSize != n) {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            pool = Executors.newFixedThreadPool(n, daemon("gcc-worker-"));
+            poolSize = n;
+        }
+        return pool;
+    }
+
+    /**
+     * Make a factory for numbered daemon threads
+     *
+     * @param name the prefix of each thread's name
+     * @return the thread factory
+     */
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread t = new Thread(task, name + count.incrementAndGet());
+            // Never keep the JVM alive once the GA is done
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Make a scratch directory for the calling thread, removed on exit
+     *
+     * @return the new directory
+     */
+    private static File makeScratch() {
+        try {
+            File dir = Files.createTempDirectory("geneticcode-").toFile();
+            // deleteOnExit runs in reverse order, so the file goes first
+            dir.deleteOnExit();
+            new File(dir, "main.cpp").deleteOnExit();
+            return dir;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Compile the source and count the words of error output.
+     *
+     * From a file, gcc runs inside the scratch directory on "./main.cpp", so
+     * the diagnostics read exactly as they would for the shared file. From
+     * stdin, gcc reports {@code <stdin>} instead, and cannot quote the
+     * offending source lines, so the counts are lower.
+     *
+     * The error output is counted as it streams in. Only the first
+     * Fitness.STDERR_DISPLAY bytes are kept, and gcc is stopped once it passes
+     * Fitness.ERROR_WORD_CEILING words. A Watchdog stops gcc once it runs
+     * past Fitness.COMPILE_TIMEOUT_MS or writes more than
+     * Fitness.STDERR_MAX_BYTES, and the program gets
+     * Fitness.STRAGGLER_ERROR_WORDS instead.
+     *
+     * @param source the program text
+     * @return the error output and its word count
+     * @throws IOException if gcc cannot be run
+     * @throws InterruptedException if interrupted while waiting for gcc
+     */
+    static CompileResult compile(String source) throws IOException, InterruptedException {
+        return compile(source, -1);
+    }
+
+    /**
+     * Compile the source, giving up once the program has too many errors to
+     * survive selection.
+     *
+     * @param source the program text
+     * @param prune the most error words the program can have and still
+     * matter, or -1 to never give up
+     * @return the error output and its word count, which is only a lower
+     * bound if pruned
+     * @throws IOException if gcc cannot be run
+     * @throws InterruptedException if interrupted while waiting for gcc
+     */
+    static CompileResult compile(String source, long prune) throws IOException, InterruptedException {
+        long ceiling = Fitness.ERROR_WORD_CEILING;
+        boolean pruning = prune >= 0 && (ceiling <= 0 || prune < ceiling);
+        long limit = pruning ? prune : ceiling;
+        long maxBytes = Fitness.STDERR_MAX_BYTES;
+        Process p = start(source);
+
+        try (Watchdog.Job job = Watchdog.watch(p, source)) {
+            // Count the errors in fixed chunks as they arrive, and stop gcc
+            // once there are too many to matter
+            Future<ErrorCounter> errors = drains.submit(() -> {
+                ErrorCounter counter = new ErrorCounter(Fitness.STDERR_DISPLAY);
+                byte[] buffer = new byte[CHUNK];
+                long bytes = 0;
+                try (InputStream stdError = p.getErrorStream()) {
+                    int n;
+                    while ((n = stdError.read(buffer)) > 0) {
+                        counter.write(buffer, 0, n);
+                        bytes += n;
+                        if ((pruning || limit > 0) && counter.getErrorWords() > limit) {
+                            job.kill(pruning ? Watchdog.Reason.PRUNED : Watchdog.Reason.CEILING);
+                            break;
+                        }
+                        if (maxBytes > 0 && bytes > maxBytes) {
+                            job.kill(Watchdog.Reason.OUTPUT);
+                            break;
+                        }
+                    }
+                }
+                return counter;
+            });
+
+            ErrorCounter counter = finish(p, source, errors);
+            String display = counter.getDisplay();
+            long words = counter.getErrorWords();
+            // Anything stopped early is only a bound, so never remembered
+            Watchdog.Reason reason = job.getReason();
+            if (reason == Watchdog.Reason.TIMEOUT) {
+                return new CompileResult(Fitness.STRAGGLER_ERROR_WORDS,
+                        display + "\n... gcc killed after " + job.getMillis() + " ms", false);
+            } else if (reason == Watchdog.Reason.OUTPUT) {
+                return new CompileResult(Fitness.STRAGGLER_ERROR_WORDS,
+                        display + "\n... gcc killed after " + maxBytes + " bytes of errors", false);
+            } else if (reason == Watchdog.Reason.PRUNED) {
+                return new CompileResult((int) Math.min(Integer.MAX_VALUE, words),
+                        display + "\n... pruned after " + words + " words of errors", false);
+            } else if (reason == Watchdog.Reason.CEILING) {
+                return new CompileResult((int) ceiling,
+                        display + "\n... gcc stopped after " + ceiling + " words of errors", false);
+            }
+            if (counter.isTruncated()) {
+                display += "\n...";
+            }
+            return new CompileResult((int) Math.min(Integer.MAX_VALUE, words), display);
+        }
+    }
+
+    /**
+     * Compile the source and collect the error output line by line.
+     *
+     * @param source the program text
+     * @param flags extra options for gcc, placed before the file name
+     * @return the lines gcc wrote to stderr, or null if the Watchdog had to
+     * stop gcc
+     * @throws IOException if gcc cannot be run
+     * @throws InterruptedException if interrupted while waiting for gcc
+     */
+    static List<String> run(String source, String... flags) throws IOException, InterruptedException {
+        long maxBytes = Fitness.STDERR_MAX_BYTES;
+        Process p = start(source, flags);
+
+        try (Watchdog.Job job = Watchdog.watch(p, source)) {
+            // Read any errors from gcc while the source goes in
+            Future<List<String>> errors = drains.submit(() -> {
+                List<String> lines = new ArrayList<>();
+                long chars = 0;
+                try (BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()))) {
+                    String s;
+                    while ((s = stdError.readLine()) != null) {
+                        lines.add(s);
+                        chars += s.length() + 1;
+                        if (maxBytes > 0 && chars > maxBytes) {
+                            job.kill(Watchdog.Reason.OUTPUT);
+                            break;
+                        }
+                    }
+                }
+                return lines;
+            });
+            List<String> lines = finish(p, source, errors);
+            return job.getReason() == null ? lines : null;
+        }
+    }
+
+    /**
+     * Start gcc on the source, writing it to the calling thread's scratch
+     * directory unless it is to be piped in
+     *
+     * @param source the program text
+     * @param flags extra options for gcc, placed before the file name
+     * @return the running gcc
+     * @throws IOException if gcc cannot be run
+     */
+    private static Process start(String source, String... flags) throws IOException {
+        // Use system command to compile using gcc
+        List<String> command = new ArrayList<>();
+        command.add("gcc");
+        command.add("-pipe");
+        command.addAll(Arrays.asList(flags));
+        command.add("-o");
+        command.add(DISCARD);
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        if (Fitness.COMPILE_STDIN) {
+            command.add("-x");
+            command.add("c++");
+            command.add("-");
+        } else {
+            // Write this worker's "main.cpp"
+            File dir = scratch.get();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(dir, "main.cpp")))) {
+                writer.write(source);
+            }
+            command.add("./main.cpp");
+            builder.directory(dir);
+        }
+        return builder.start();
+    }
+
+    /**
+     * Pipe the source into gcc if needed, then wait for gcc and its stderr
+     *
+     * @param p the running gcc
+     * @param source the program text
+     * @param errors the thread draining stderr
+     * @return what the drain made of stderr
+     * @throws IOException if stderr cannot be read
+     * @throws InterruptedException if interrupted while waiting for gcc
+     */
+    private static <T> T finish(Process p, String source, Future<T> errors) throws IOException, InterruptedException {
+        try (Writer stdIn = new OutputStreamWriter(p.getOutputStream(), StandardCharsets.UTF_8)) {
+            if (Fitness.COMPILE_STDIN) {
+                stdIn.write(source);
+            }
+        } catch (IOException ex) {
+            // gcc gave up reading early, or was stopped, its stderr says why
+        }
+
+        try {
+            T result = errors.get();
+            p.waitFor();
+            return result;
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        } finally {
+            if (p.isAlive()) {
+                Watchdog.kill(p);
+            }
+        }
+    }
+
+    /**
+     * Concatenate error output and count its words
+     *
+     * @param lines the lines gcc wrote to stderr
+     * @return the error output and its word count
+     */
+    static CompileResult count(List<String> lines) {
+        ErrorCounter counter = new ErrorCounter(Fitness.STDERR_DISPLAY);
+        for (String s : lines) {
+            counter.write(s);
+        }
+        String display = counter.getDisplay();
+        if (counter.isTruncated()) {
+            display += "\n...";
+        }
+        return new CompileResult((int) Math.min(Integer.MAX_VALUE, counter.getErrorWords()), display);
+    }
+}
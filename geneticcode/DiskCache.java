@@ -0,0 +1,419 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A persistent cache of compile results that can be shared by every run on a
+ * host.
+ *
+ * The file is an append-only hash table. A memory-mapped table of fixed size
+ * slots (key, record offset, hit count) sits after a small header, followed by
+ * the records themselves. Lookups probe the mapped table without locking.
+ * Appends take an exclusive lock on the file, write the record first and
+ * publish its offset in the slot last, so a reader in another JVM sees either
+ * nothing or a complete record. Records also carry their key, which readers
+ * check before trusting a slot.
+ *
+ * Once the file reaches its size cap, or the table is three-quarters full,
+ * new results are no longer stored. Run "compact" to rewrite the file keeping
+ * the most frequently hit results:
+ *
+ * java geneticcode.DiskCache compact cache.bin [maxBytes]
+ *
+ */
+public class DiskCache implements Closeable {
+
+    private static final int MAGIC = 0x47434331;
+    private static final int VERSION = 1;
+
+    // Header layout
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 4;
+    private static final int SLOTS_AT = 8;
+    private static final int RETIRED_AT = 12;
+    private static final int END_AT = 16;
+    private static final int CAP_AT = 24;
+    private static final int ENTRIES_AT = 32;
+
+    // Slot layout: high, low, record offset (0 if empty), hits
+    private static final int SLOT_BYTES = 32;
+    private static final int HIGH_AT = 0;
+    private static final int LOW_AT = 8;
+    private static final int OFFSET_AT = 16;
+    private static final int HITS_AT = 24;
+
+    // Record layout: high, low, error words, stderr length, stderr bytes
+    private static final int RECORD_HEADER_BYTES = 24;
+
+    /**
+     * Default number of slots in a new table
+     */
+    public static final int DEFAULT_SLOTS = 1 << 16;
+    /**
+     * Default size cap of the file
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+    // Stop inserting beyond this load factor
+    private static final double MAX_LOAD = 0.75;
+    // Only keep this much of each error message, the word count is exact
+    private static final int STDERR_LIMIT = 8192;
+
+    private final Path path;
+    private final long maxBytes;
+    private final int slotCount;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int slots;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Open the cache at the given path, creating it if missing
+     *
+     * @param path the cache file
+     * @param maxBytes the size cap for a new file
+     * @throws IOException if the file cannot be opened or is not a cache
+     */
+    public DiskCache(Path path, long maxBytes) throws IOException {
+        this(path, maxBytes, DEFAULT_SLOTS);
+    }
+
+    /**
+     * Open the cache at the given path, creating it if missing
+     *
+     * @param path the cache file
+     * @param maxBytes the size cap for a new file
+     * @param slotCount the number of slots for a new file, a power of two
+     * @throws IOException if the file cannot be opened or is not a cache
+     */
+    public DiskCache(Path path, long maxBytes, int slotCount) throws IOException {
+        this.path = path;
+        this.maxBytes = maxBytes;
+        this.slotCount = Integer.highestOneBit(Math.max(slotCount, 16) - 1) << 1;
+        open();
+    }
+
+    /**
+     * Open (or create) the file and map its slot table
+     */
+    private void open() throws IOException {
+        file = new RandomAccessFile(path.toFile(), "rw");
+        channel = file.getChannel();
+        boolean valid;
+        FileLock lock = channel.lock();
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                // New file, write the header and an empty table
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC_AT, MAGIC);
+                header.putInt(VERSION_AT, VERSION);
+                header.putInt(SLOTS_AT, slotCount);
+                header.putLong(END_AT, tableBytes(slotCount));
+                header.putLong(CAP_AT, maxBytes);
+                file.setLength(tableBytes(slotCount));
+                channel.write(header, 0);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            valid = header.getInt(MAGIC_AT) == MAGIC && header.getInt(VERSION_AT) == VERSION;
+            slots = header.getInt(SLOTS_AT);
+        } finally {
+            lock.release();
+        }
+        if (!valid) {
+            channel.close();
+            throw new IOException(path + " is not a fitness cache");
+        }
+        table = channel.map(FileChannel.MapMode.READ_WRITE, 0, tableBytes(slots));
+    }
+
+    /**
+     * Reopen the file if a compaction has replaced it
+     */
+    private void reopenIfRetired() throws IOException {
+        if (table.getInt(RETIRED_AT) != 0) {
+            channel.close();
+            open();
+        }
+    }
+
+    /**
+     * Size of the header and slot table
+     */
+    private static long tableBytes(int slots) {
+        return HEADER_BYTES + (long) slots * SLOT_BYTES;
+    }
+
+    /**
+     * Position of the first slot to probe for a key
+     */
+    private int home(ProgramKey key) {
+        return (int) (key.getLow() ^ (key.getLow() >>> 29)) & (slots - 1);
+    }
+
+    /**
+     * Position in the file of the given slot
+     */
+    private static int slotAt(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    /**
+     * Find the slot holding the key, or the empty slot where it would go
+     *
+     * @return the slot position, or -1 if the table is full
+     */
+    private int probe(ProgramKey key) {
+        int slot = home(key);
+        for (int i = 0; i < slots; i++) {
+            int at = slotAt(slot);
+            if (table.getLong(at + OFFSET_AT) == 0) {
+                return at;
+            }
+            if (table.getLong(at + HIGH_AT) == key.getHigh() && table.getLong(at + LOW_AT) == key.getLow()) {
+                return at;
+            }
+            slot = (slot + 1) & (slots - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Look up a compile result
+     *
+     * @param key the key of the rendered Program
+     * @return the result if present, otherwise null
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized CompileResult get(ProgramKey key) throws IOException {
+        reopenIfRetired();
+        int at = probe(key);
+        long offset = at < 0 ? 0 : table.getLong(at + OFFSET_AT);
+        CompileResult result = offset == 0 ? null : readRecord(offset, key);
+        if (result == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        // Approximate, only used to rank entries when compacting
+        table.putInt(at + HITS_AT, table.getInt(at + HITS_AT) + 1);
+        return result;
+    }
+
+    /**
+     * Read the record at the given offset if it belongs to the key
+     */
+    private CompileResult readRecord(long offset, ProgramKey key) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        if (channel.read(header, offset) < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        if (header.getLong(0) != key.getHigh() || header.getLong(8) != key.getLow()) {
+            return null;
+        }
+        int errorWords = header.getInt(16);
+        byte[] stderr = new byte[header.getInt(20)];
+        ByteBuffer body = ByteBuffer.wrap(stderr);
+        while (body.hasRemaining()) {
+            if (channel.read(body, offset + RECORD_HEADER_BYTES + body.position()) < 0) {
+                return null;
+            }
+        }
+        return new CompileResult(errorWords, new String(stderr, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Store a compile result, unless it is already present or the cache is
+     * full
+     *
+     * @param key the key of the rendered Program
+     * @param result the compile result
+     * @return true if the result was appended
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized boolean put(ProgramKey key, CompileResult result) throws IOException {
+        return put(key, result, 0);
+    }
+
+    /**
+     * Store a compile result with an initial hit count
+     */
+    private boolean put(ProgramKey key, CompileResult result, int initialHits) throws IOException {
+        reopenIfRetired();
+        byte[] stderr = result.getStdError().getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(stderr.length, STDERR_LIMIT);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + length);
+        record.putLong(key.getHigh()).putLong(key.getLow());
+        record.putInt(result.getErrorWords()).putInt(length);
+        record.put(stderr, 0, length);
+        record.flip();
+
+        FileLock lock = channel.lock();
+        try {
+            // Another process may have claimed the slot while we waited
+            int at = probe(key);
+            if (at < 0 || table.getLong(at + OFFSET_AT) != 0) {
+                return false;
+            }
+            long entries = table.getLong(ENTRIES_AT);
+            long end = table.getLong(END_AT);
+            if (entries + 1 > slots * MAX_LOAD || end + record.remaining() > table.getLong(CAP_AT)) {
+                return false;
+            }
+
+            // Record first, then publish the slot with its offset last
+            while (record.hasRemaining()) {
+                channel.write(record, end + record.position());
+            }
+            table.putLong(at + HIGH_AT, key.getHigh());
+            table.putLong(at + LOW_AT, key.getLow());
+            table.putInt(at + HITS_AT, initialHits);
+            table.putLong(at + OFFSET_AT, end);
+            table.putLong(END_AT, end + record.limit());
+            table.putLong(ENTRIES_AT, entries + 1);
+            return true;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Count the results stored in the file
+     *
+     * @return the number of entries
+     */
+    public synchronized long size() {
+        return table.getLong(ENTRIES_AT);
+    }
+
+    /**
+     * Get the number of bytes used in the file
+     *
+     * @return the append offset
+     */
+    public synchronized long bytes() {
+        return table.getLong(END_AT);
+    }
+
+    /**
+     * Get the number of lookups in this process that found a result
+     *
+     * @return the hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups in this process that found nothing
+     *
+     * @return the miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Close the file
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Rewrite a cache file keeping only the most frequently hit results that
+     * fit under the size cap. Processes with the old file open notice it has
+     * been retired and reopen the path; anything they append to the old file
+     * while the rewrite is running is lost.
+     *
+     * @param path the cache file
+     * @param maxBytes the size cap of the rewritten file
+     * @return the number of entries kept
+     * @throws IOException if either file cannot be read or written
+     */
+    public static long compact(Path path, long maxBytes) throws IOException {
+        Path tmp = Paths.get(path + ".compact");
+        Files.deleteIfExists(tmp);
+        try (DiskCache old = new DiskCache(path, maxBytes)) {
+            FileLock lock = old.channel.lock();
+            try {
+                // Gather every live entry
+                List<long[]> live = new ArrayList<>();
+                for (int slot = 0; slot < old.slots; slot++) {
+                    int at = slotAt(slot);
+                    long offset = old.table.getLong(at + OFFSET_AT);
+                    if (offset != 0) {
+                        live.add(new long[]{old.table.getInt(at + HITS_AT), old.table.getLong(at + HIGH_AT),
+                            old.table.getLong(at + LOW_AT), offset});
+                    }
+                }
+                // Hottest first, so the cap drops the coldest
+                live.sort((a, b) -> Long.compare(b[0], a[0]));
+
+                long kept = 0;
+                int slotCount = Math.max(DEFAULT_SLOTS, Integer.highestOneBit(Math.max(live.size(), 1)) << 2);
+                try (DiskCache fresh = new DiskCache(tmp, maxBytes, slotCount)) {
+                    for (long[] entry : live) {
+                        ProgramKey key = new ProgramKey(entry[1], entry[2]);
+                        CompileResult result = old.readRecord(entry[3], key);
+                        if (result != null && fresh.put(key, result, (int) entry[0])) {
+                            kept++;
+                        }
+                    }
+                }
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                old.table.putInt(RETIRED_AT, 1);
+                return kept;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Command line tool to inspect or compact a cache file
+     *
+     * @param args "stats" or "compact", the file, and an optional size cap
+     * @throws IOException if the file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("stats") || args[0].equals("compact"))) {
+            System.err.println("Usage: DiskCache stats|compact <file> [maxBytes]");
+            System.exit(1);
+        }
+        Path path = Paths.get(args[1]);
+        long maxBytes = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MAX_BYTES;
+        if (args[0].equals("compact")) {
+            System.out.println("Kept " + compact(path, maxBytes) + " entries");
+        }
+        try (DiskCache cache = new DiskCache(path, maxBytes)) {
+            System.out.println(cache.size() + " entries in " + cache.slots + " slots, "
+                    + cache.bytes() + " of " + cache.table.getLong(CAP_AT) + " bytes");
+        }
+    }
+}
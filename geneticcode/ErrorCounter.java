@@ -0,0 +1,125 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Counts the words of gcc's error output as it streams in, keeping only the
+ * first few kilobytes for display.
+ *
+ * The count matches joining the lines without separators, trimming the
+ * result and splitting it on single whitespace characters: it is the number
+ * of whitespace characters between the first and last non-blank characters,
+ * with line breaks dropped. Every byte of a multi-byte character is above
+ * the space character, so the count can be taken on bytes.
+ *
+ */
+class ErrorCounter {
+
+    // The text kept for display, in the platform charset like gcc wrote it
+    private final byte[] prefix;
+    private int length = 0;
+    private boolean truncated = false;
+
+    private long words = 0;
+    // Whitespace seen since the last non-blank byte, only counted once
+    // another non-blank byte shows it is not trailing
+    private long pending = 0;
+    private boolean started = false;
+
+    /**
+     * Construct a counter that keeps at most the given number of bytes for
+     * display
+     *
+     * @param display the size of the display prefix
+     */
+    ErrorCounter(int display) {
+        prefix = new byte[Math.max(0, display)];
+    }
+
+    /**
+     * Count a chunk of error output
+     *
+     * @param buffer the bytes read
+     * @param offset the first byte to count
+     * @param count the number of bytes to count
+     */
+    void write(byte[] buffer, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            int b = buffer[i] & 0xff;
+            switch (b) {
+                case '\n':
+                case '\r':
+                    // Line breaks are not part of the joined output
+                    continue;
+                case ' ':
+                case '\t':
+                case 0x0b:
+                case '\f':
+                    if (started) {
+                        pending++;
+                    }
+                    break;
+                default:
+                    if (b > ' ') {
+                        if (started) {
+                            words += pending;
+                        }
+                        pending = 0;
+                        started = true;
+                    }
+                    break;
+            }
+            // Leading blanks are trimmed from the display as well
+            if (started) {
+                if (length < prefix.length) {
+                    prefix[length++] = (byte) b;
+                } else {
+                    truncated = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Count one line of error output
+     *
+     * @param line the line, without its line break
+     */
+    void write(String line) {
+        byte[] bytes = line.getBytes(Charset.defaultCharset());
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Get the number of error words so far
+     *
+     * @return the word count
+     */
+    long getErrorWords() {
+        return words;
+    }
+
+    /**
+     * Check if output was dropped from the display
+     *
+     * @return true if the display prefix is full
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Get the display prefix of the error output
+     *
+     * @return the trimmed error output, cut at the display size
+     */
+    String getDisplay() {
+        // A multi-byte character cut in half decodes to a replacement
+        return new String(Arrays.copyOf(prefix, length), Charset.defaultCharset()).trim();
+    }
+}
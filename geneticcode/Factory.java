@@ -11,12 +11,24 @@ package geneticcode;
 import static geneticcode.Factory.getRandomVariable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGenerator.SplittableGenerator;
 
 /**
  * A collection of static methods to generate different program elements.
  *
+ * The odds of each production are compiled into Alias tables, so a choice
+ * costs one random number however many branches it has. Numbers, characters
+ * and variables with operators come from pools interned once, and each
+ * Statement is appended token by token to a TokenBuilder whose array the
+ * Statement then takes over. See FactoryBenchmark.
+ *
  */
 public class Factory {
 
@@ -45,8 +57,83 @@ public class Factory {
     private final static String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
     private final static int N = alphabet.length();
 
-    // Random seed 
-    private static final Random r = new Random();
+    // Odds of the branches of the productions, see the methods using them
+    private static final Alias tokenKinds = new Alias(0.5, 0.1, 0.2, 0.2);
+    private static final Alias valueKinds = new Alias(0.5, 0.4, 0.1);
+    private static final Alias operandKinds = new Alias(0.5, 0.0125, 0.0125, 0.0125, 0.0125, 0.045, 0.405);
+    private static final Alias initializerKinds = new Alias(0.1, 0.5, 0.4);
+    private static final Alias controlKinds = new Alias(0.3, 0.2, 0.2, 0.2, 0.1);
+    private static final Alias itemKinds = new Alias(0.2, 0.6, 0.1, 0.1);
+    private static final Alias statementKinds = new Alias(0.25, 0.25, 0.5);
+    private static final Alias expressionLengths = Alias.shrinking(8);
+    private static final Alias blockLengths = Alias.shrinking(6);
+    private static final Alias caseCounts = Alias.shrinking(10);
+
+    // The tokens of each list, interned
+    private static final int[] keywordIds = ids(keywords);
+    private static final int[] typeIds = ids(types);
+    private static final int[] modifierIds = ids(modifiers);
+    private static final int[] branchIds = ids(branch);
+    private static final int[] operatorIds = ids(binary_operators);
+    private static final int[] variableIds = ids(variables);
+
+    // Literal pools: numbers in hundredths from -100 to 100, interned as
+    // first drawn, and whole numbers from -100 to 99, each followed by its
+    // negated copy, then the characters, which are never negated
+    private static final int HUNDREDTHS = 20001;
+    private static final int[] decimalIds = new int[2 * HUNDREDTHS];
+    private static final int[] integerIds = new int[2 * 200];
+    private static final int[] characterIds = new int[N];
+    // Variables with ++ or -- before and after, and with !
+    private static final int[][] operandIds = new int[5][];
+
+    // Tokens the productions add as they are
+    private static final int IF = Symbols.id("if");
+    private static final int FOR = Symbols.id("for");
+    private static final int WHILE = Symbols.id("while");
+    private static final int DO = Symbols.id("do");
+    private static final int SWITCH = Symbols.id("switch");
+    private static final int CASE = Symbols.id("case");
+    private static final int DEFAULT = Symbols.id("default");
+    private static final int BREAK = Symbols.id("break;");
+    private static final int OPEN = Symbols.id("(");
+    private static final int CLOSE = Symbols.id(")");
+    private static final int BEGIN = Symbols.id("{");
+    private static final int END = Symbols.id("}");
+    private static final int ASSIGN = Symbols.id("=");
+    private static final int QUESTION = Symbols.id("?");
+    private static final int COLON = Symbols.id(":");
+    private static final int SEMICOLON = Symbols.id(";");
+
+    static {
+        for (int i = 0; i < 200; i++) {
+            integerIds[i] = Symbols.id(String.valueOf(i - 100));
+            integerIds[200 + i] = Symbols.id("-" + (i - 100));
+        }
+        for (int i = 0; i < N; i++) {
+            characterIds[i] = Symbols.id("'" + alphabet.charAt(i) + "'");
+        }
+        String[][] forms = {{"++", ""}, {"--", ""}, {"", "++"}, {"", "--"}, {"!", ""}};
+        for (int f = 0; f < forms.length; f++) {
+            operandIds[f] = new int[variables.size()];
+            for (int v = 0; v < variables.size(); v++) {
+                operandIds[f][v] = Symbols.id(forms[f][0] + variables.get(v) + forms[f][1]);
+            }
+        }
+    }
+
+    // Where each thread builds its Statements
+    private static final ThreadLocal<TokenBuilder> builder = ThreadLocal.withInitial(TokenBuilder::new);
+
+    // Programs made by each task of makeRandomPrograms(), and the rounds it
+    // spends replacing duplicates
+    private static final int GRAIN = 16;
+    private static final int UNIQUE_ROUNDS = 8;
+
+    /**
+     * Make typed Statements, which keep their grammar tree, see Grammar
+     */
+    public static boolean TYPED = false;
 
     // Dummy constructor to prevent object instances
     private Factory() {
@@ -58,16 +145,16 @@ public class Factory {
      * @return the random keyword
      */
     public static String getRandomToken() {
-        double rnd = r.nextDouble();
-        // Coin toss
-        if (rnd < 0.5) {
-            return keywords.get(r.nextInt(keywords.size()));
-        } else if (rnd < 0.6) {
-            return getRandomOperator();
-        } else if (rnd < 0.8) {
-            return getRandomVariable();
-        } else {
-            return getRandomValue();
+        RandomGenerator r = Rng.get();
+        switch (tokenKinds.sample(r)) {
+            case 0:
+                return keywords.get(r.nextInt(keywords.size()));
+            case 1:
+                return getRandomOperator();
+            case 2:
+                return getRandomVariable();
+            default:
+                return getRandomValue();
         }
     }
 
@@ -77,7 +164,7 @@ public class Factory {
      * @return the random keyword
      */
     public static String getRandomKeyword() {
-        return keywords.get(r.nextInt(keywords.size()));
+        return keywords.get(Rng.get().nextInt(keywords.size()));
     }
 
     /**
@@ -86,18 +173,7 @@ public class Factory {
      * @return a new number
      */
     public static String getRandomValue() {
-        double rnd = r.nextDouble();
-        String neg = rnd < 0.1 ? "-" : "";
-
-        rnd = r.nextDouble();
-        // Coin toss, either an int or a double
-        if (rnd < 0.5) {
-            return String.format("%s%.2f", neg, (r.nextDouble() * 200) - 100);
-        } else if (rnd < 0.9) {
-            return "" + neg + (r.nextInt(200) - 100);
-        } else {
-            return "'" + (alphabet.charAt(r.nextInt(N))) + "'";
-        }
+        return Symbols.name(value(Rng.get()));
     }
 
     /**
@@ -106,7 +182,7 @@ public class Factory {
      * @return a new variable
      */
     public static String getRandomVariable() {
-        return variables.get(r.nextInt(variables.size()));
+        return variables.get(Rng.get().nextInt(variables.size()));
     }
 
     /**
@@ -115,29 +191,7 @@ public class Factory {
      * @return a random variable
      */
     public static String getRandomValueOrVariable() {
-        double rnd = r.nextDouble();
-        // Coin toss, either a number or variable
-        if (rnd < 0.5) {
-            return getRandomValue();
-        } else {
-            rnd = r.nextDouble();
-            // 2nd Coin toss, add prefix or postfix
-            if (rnd < 0.1) {
-                double rnd2 = r.nextDouble();
-                if (rnd2 < 0.25) {
-                    return "++" + getRandomVariable();
-                } else if (rnd2 < 0.5) {
-                    return "--" + getRandomVariable();
-                } else if (rnd2 < 0.75) {
-                    return getRandomVariable() + "++";
-                } else {
-                    return getRandomVariable() + "--";
-                }
-            } else {
-                String not = r.nextDouble() < 0.1 ? "!" : "";
-                return not + getRandomVariable();
-            }
-        }
+        return Symbols.name(operand(Rng.get()));
     }
 
     /**
@@ -146,7 +200,7 @@ public class Factory {
      * @return the random operator
      */
     public static String getRandomOperator() {
-        return binary_operators.get(r.nextInt(binary_operators.size()));
+        return binary_operators.get(Rng.get().nextInt(binary_operators.size()));
     }
 
     /**
@@ -155,7 +209,25 @@ public class Factory {
      * @return the random type
      */
     public static String getRandomType() {
-        return types.get(r.nextInt(types.size()));
+        return types.get(Rng.get().nextInt(types.size()));
+    }
+
+    /**
+     * Returns a random type modifier
+     *
+     * @return the random modifier
+     */
+    public static String getRandomModifier() {
+        return modifiers.get(Rng.get().nextInt(modifiers.size()));
+    }
+
+    /**
+     * Returns a random branching keyword
+     *
+     * @return the random branch
+     */
+    public static String getRandomBranch() {
+        return branch.get(Rng.get().nextInt(branch.size()));
     }
 
     /**
@@ -164,29 +236,9 @@ public class Factory {
      * @return a random expression
      */
     public static ArrayList<String> getRandomExpression() {
-        ArrayList<String> lst = new ArrayList<>();
-        int len = r.nextInt(r.nextInt(8) + 1);
-    
-        boolean parenthesis = len > 1 ? (r.nextDouble() < 0.33) : false;       
-        
-        if (parenthesis){
-            lst.add("(");
-        }
-        lst.add(getRandomValueOrVariable());
-        for (int i = 1; i < len; i++) {
-            lst.add(getRandomOperator());
-            double rnd = r.nextDouble();
-            if (rnd < 0.5) {
-                lst.add(getRandomValueOrVariable());
-            }else{
-                lst.addAll(getRandomExpression());
-            }
-        }
-        if (parenthesis){
-            lst.add(")");
-        }
-        return lst;
-
+        TokenBuilder b = new TokenBuilder();
+        expression(b, Rng.get());
+        return b.takeList();
     }
 
     /**
@@ -195,29 +247,9 @@ public class Factory {
      * @return the random declaration
      */
     public static ArrayList<String> getRandomDeclaration() {
-        ArrayList<String> lst = new ArrayList<>();
-        double rnd = r.nextDouble();
-        if (rnd < 0.25) {
-            lst.add(modifiers.get(r.nextInt(modifiers.size())));
-        }
-
-        lst.add(getRandomType());
-        lst.add(getRandomVariable());
-
-        rnd = r.nextDouble();
-        if (rnd < 0.1) {
-            lst.add("=");
-            lst.addAll(getRandomExpression());
-            lst.add("?");
-            lst.add(getRandomValueOrVariable());
-            lst.add(":");
-            lst.add(getRandomValueOrVariable());
-        } else if (rnd < 0.6) {
-            lst.add("=");
-            lst.addAll(getRandomExpression());
-        }
-        lst.add(";");
-        return lst;
+        TokenBuilder b = new TokenBuilder();
+        declaration(b, Rng.get());
+        return b.takeList();
     }
 
     /**
@@ -226,12 +258,9 @@ public class Factory {
      * @return an assignment statement
      */
     public static ArrayList<String> getRandomAssignment() {
-        ArrayList<String> lst = new ArrayList<>();
-        lst.add(getRandomVariable());
-        lst.add("=");
-        lst.addAll(getRandomExpression());
-        lst.add(";");
-        return lst;
+        TokenBuilder b = new TokenBuilder();
+        assignment(b, Rng.get());
+        return b.takeList();
     }
 
     /**
@@ -240,69 +269,9 @@ public class Factory {
      * @return an assignment control
      */
     public static ArrayList<String> getRandomControlStatement() {
-        ArrayList<String> lst = new ArrayList<>();
-
-        double rnd = r.nextDouble();
-        if (rnd < 0.3) {
-            // if statement
-            lst.add("if");
-            lst.add("(");
-            lst.addAll(getRandomExpression());
-            lst.add(")");
-            lst.addAll(getRandomBlock());
-        } else if (rnd < 0.5) {
-            // for loop
-            lst.add("for");
-            lst.add("(");
-            lst.addAll(getRandomDeclaration());
-            lst.addAll(getRandomExpression());
-            lst.add(";");
-            lst.addAll(getRandomExpression());
-            lst.add(")");
-            lst.addAll(getRandomBlock());
-        } else if (rnd < 0.7) {
-            // while loop
-            lst.add("while");
-            lst.add("(");
-            lst.addAll(getRandomExpression());
-            lst.add(")");
-            lst.addAll(getRandomBlock());
-        } else if (rnd < 0.9) {
-            // do while loop
-            lst.add("do");
-            lst.addAll(getRandomBlock());
-            lst.add("while");
-            lst.add("(");
-            lst.addAll(getRandomExpression());
-            lst.add(")");
-            lst.add(";");
-        } else {
-            // switch
-            lst.add("switch");
-            lst.add("(");
-            lst.add(getRandomVariable());
-            lst.add(")");
-            lst.add("{");
-            int nCases = r.nextInt(r.nextInt(10) + 1);
-            for (int i = 0; i < nCases; i++) {
-                lst.add("case");
-                lst.add(getRandomValue());
-                lst.add(":");
-                lst.addAll(getRandomBlock());
-                rnd = r.nextDouble();
-                if (rnd < 0.5) {
-                    lst.add("break;");
-                }
-            }
-            rnd = r.nextDouble();
-            if (rnd < 0.25) {
-                lst.add("default");
-                lst.add(":");
-                lst.addAll(getRandomBlock());
-            }
-            lst.add("}");
-        }
-        return lst;
+        TokenBuilder b = new TokenBuilder();
+        control(b, Rng.get());
+        return b.takeList();
     }
 
     /**
@@ -311,25 +280,9 @@ public class Factory {
      * @return an assignment control
      */
     public static ArrayList<String> getRandomBlock() {
-        ArrayList<String> lst = new ArrayList<>();
-        int len = r.nextInt(r.nextInt(6) + 1) + 1;
-
-        lst.add("{");
-        for (int i = 0; i < len; i++) {
-            double rnd = r.nextDouble();
-            if (rnd < 0.2) {
-                lst.addAll(getRandomDeclaration());
-            } else if (rnd < 0.8) {
-                lst.addAll(getRandomExpression());
-                lst.add(";");
-            } else if (rnd < 0.9) {
-                lst.add(branch.get(r.nextInt(branch.size())));
-            } else {
-                lst.addAll(getRandomControlStatement());
-            }
-        }
-        lst.add("}");
-        return lst;
+        TokenBuilder b = new TokenBuilder();
+        block(b, Rng.get());
+        return b.takeList();
     }
 
     /**
@@ -338,21 +291,12 @@ public class Factory {
      * @return a statement
      */
     public static Statement getRandomStatement() {
-        ArrayList<String> lst = new ArrayList<>();
-
-        double rnd = r.nextDouble();
-        if (rnd < 0.25) {
-            lst.addAll(getRandomDeclaration());
-        } else if (rnd < 0.5) {
-            lst.addAll(getRandomAssignment());
-        } else if (rnd < 0.75) {
-            lst.addAll(getRandomControlStatement());
-        } else {
-            lst.addAll(getRandomControlStatement());
+        if (TYPED) {
+            return new Statement(Grammar.statement(Grammar.Scope.TOP, new HashSet<>()));
         }
-
-        Statement statement = new Statement(lst);
-        return statement;
+        TokenBuilder b = builder.get();
+        statement(b, Rng.get());
+        return new Statement(b.take());
     }
 
     /**
@@ -362,16 +306,379 @@ public class Factory {
      * @return a new Program
      */
     public static Program makeRandomProgram(int kStatements) {
+        if (TYPED) {
+            return new Program(Grammar.program(kStatements));
+        }
         ArrayList<Statement> statements = new ArrayList<>();
+        TokenBuilder b = builder.get();
+        RandomGenerator r = Rng.get();
 
         int nDeclarations = (int) Math.round(kStatements * 0.25);
         for (int i = 0; i < nDeclarations; i++) {
-            statements.add(new Statement(getRandomDeclaration()));
+            declaration(b, r);
+            statements.add(new Statement(b.take()));
         }
 
         for (int k = nDeclarations; k < kStatements; k++) {
-            statements.add(getRandomStatement());
+            statement(b, r);
+            statements.add(new Statement(b.take()));
         }
         return new Program(statements);
     }
+
+    /**
+     * Generate random Programs in parallel
+     *
+     * @param n the number of Programs
+     * @param kStatements the number of statements in each
+     * @return the Programs, the same for the same seed whichever threads
+     * made them
+     */
+    public static ArrayList<Program> makeRandomPrograms(int n, int kStatements) {
+        return makeRandomPrograms(n, kStatements, false, null);
+    }
+
+    /**
+     * Generate random Programs in parallel on the fork/join pool, handing
+     * each to the sink as soon as it is made, so it can be compiled while the
+     * rest are generated.
+     *
+     * Each task draws from a generator split from its parent's, and tasks
+     * split the same way for the same n, so the Programs are the same for
+     * the same seed whichever threads made them. Duplicates are found in
+     * order, after each round of generation, and made again with new
+     * generators, a few rounds at most. The sink then gets each round's new
+     * Programs in order, on the calling thread.
+     *
+     * @param n the number of Programs
+     * @param kStatements the number of statements in each
+     * @param unique true to replace Programs equal to an earlier one, as far
+     * as a few rounds manage
+     * @param sink gets each Program once made and kept, on any thread, or
+     * null
+     * @return the Programs
+     */
+    public static ArrayList<Program> makeRandomPrograms(int n, int kStatements, boolean unique, Consumer<Program> sink) {
+        Program[] programs = new Program[n];
+        int[] slots = new int[n];
+        for (int i = 0; i < n; i++) {
+            slots[i] = i;
+        }
+        Set<Program> seen = new HashSet<>();
+        for (int round = 0; slots.length > 0; round++) {
+            boolean last = !unique || round == UNIQUE_ROUNDS;
+            ForkJoinPool.commonPool().invoke(new Maker(programs, slots, 0, slots.length, kStatements, Rng.fork(),
+                    last ? sink : null));
+            if (last) {
+                break;
+            }
+            // Keep the first of each, in order, and make the others again
+            int again = 0;
+            for (int slot : slots) {
+                if (seen.add(programs[slot])) {
+                    if (sink != null) {
+                        sink.accept(programs[slot]);
+                    }
+                } else {
+                    slots[again++] = slot;
+                }
+            }
+            slots = Arrays.copyOf(slots, again);
+        }
+        return new ArrayList<>(Arrays.asList(programs));
+    }
+
+    /**
+     * A task of makeRandomPrograms(), which makes the Programs of some slots
+     * itself or splits them between two new tasks
+     */
+    private static class Maker extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Program[] programs;
+        private final int[] slots;
+        private final int low;
+        private final int high;
+        private final int kStatements;
+        private final SplittableGenerator generator;
+        private final Consumer<Program> sink;
+
+        Maker(Program[] programs, int[] slots, int low, int high, int kStatements, SplittableGenerator generator,
+                Consumer<Program> sink) {
+            this.programs = programs;
+            this.slots = slots;
+            this.low = low;
+            this.high = high;
+            this.kStatements = kStatements;
+            this.generator = generator;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            if (high - low > GRAIN) {
+                // Split the generators here, not where the tasks run
+                int mid = (low + high) >>> 1;
+                invokeAll(new Maker(programs, slots, low, mid, kStatements, generator.split(), sink),
+                        new Maker(programs, slots, mid, high, kStatements, generator.split(), sink));
+                return;
+            }
+            RandomGenerator before = Rng.use(generator);
+            try {
+                for (int i = low; i < high; i++) {
+                    Program p = makeRandomProgram(kStatements);
+                    programs[slots[i]] = p;
+                    if (sink != null) {
+                        sink.accept(p);
+                    }
+                }
+            } finally {
+                Rng.use(before);
+            }
+        }
+    }
+
+    /**
+     * Pick a random number, negated one time in ten
+     */
+    private static int value(RandomGenerator r) {
+        int neg = r.nextDouble() < 0.1 ? 1 : 0;
+        switch (valueKinds.sample(r)) {
+            case 0:
+                // Rounded to hundredths, as "%.2f" would print it
+                int i = neg * HUNDREDTHS + (int) Math.round((r.nextDouble() * 200 - 100) * 100) + 10000;
+                int id = decimalIds[i];
+                if (id == 0) {
+                    // Racing threads intern the same token, so either id
+                    // will do
+                    id = Symbols.id((neg == 1 ? "-" : "") + hundredths(i - neg * HUNDREDTHS - 10000));
+                    decimalIds[i] = id;
+                }
+                return id;
+            case 1:
+                return integerIds[neg * 200 + r.nextInt(200)];
+            default:
+                return characterIds[r.nextInt(N)];
+        }
+    }
+
+    /**
+     * Pick a random value or variable: half values, and the variables
+     * incremented or decremented one time in ten, negated with ! one time
+     * in ten of the rest
+     */
+    private static int operand(RandomGenerator r) {
+        int kind = operandKinds.sample(r);
+        if (kind == 0) {
+            return value(r);
+        }
+        int v = r.nextInt(variables.size());
+        return kind == 6 ? variableIds[v] : operandIds[kind - 1][v];
+    }
+
+    /**
+     * Append a random expression
+     */
+    private static void expression(TokenBuilder b, RandomGenerator r) {
+        int len = expressionLengths.sample(r);
+        boolean parenthesis = len > 1 && r.nextDouble() < 0.33;
+
+        if (parenthesis) {
+            b.add(OPEN);
+        }
+        b.add(operand(r));
+        for (int i = 1; i < len; i++) {
+            b.add(operatorIds[r.nextInt(operatorIds.length)]);
+            if (r.nextDouble() < 0.5) {
+                b.add(operand(r));
+            } else {
+                expression(b, r);
+            }
+        }
+        if (parenthesis) {
+            b.add(CLOSE);
+        }
+    }
+
+    /**
+     * Append a random declaration
+     */
+    private static void declaration(TokenBuilder b, RandomGenerator r) {
+        if (r.nextDouble() < 0.25) {
+            b.add(modifierIds[r.nextInt(modifierIds.length)]);
+        }
+        b.add(typeIds[r.nextInt(typeIds.length)]);
+        b.add(variableIds[r.nextInt(variableIds.length)]);
+
+        switch (initializerKinds.sample(r)) {
+            case 0:
+                b.add(ASSIGN);
+                expression(b, r);
+                b.add(QUESTION);
+                b.add(operand(r));
+                b.add(COLON);
+                b.add(operand(r));
+                break;
+            case 1:
+                b.add(ASSIGN);
+                expression(b, r);
+                break;
+            default:
+                break;
+        }
+        b.add(SEMICOLON);
+    }
+
+    /**
+     * Append a random assignment
+     */
+    private static void assignment(TokenBuilder b, RandomGenerator r) {
+        b.add(variableIds[r.nextInt(variableIds.length)]);
+        b.add(ASSIGN);
+        expression(b, r);
+        b.add(SEMICOLON);
+    }
+
+    /**
+     * Append a random control statement
+     */
+    private static void control(TokenBuilder b, RandomGenerator r) {
+        switch (controlKinds.sample(r)) {
+            case 0:
+                // if statement
+                b.add(IF);
+                b.add(OPEN);
+                expression(b, r);
+                b.add(CLOSE);
+                block(b, r);
+                break;
+            case 1:
+                // for loop
+                b.add(FOR);
+                b.add(OPEN);
+                declaration(b, r);
+                expression(b, r);
+                b.add(SEMICOLON);
+                expression(b, r);
+                b.add(CLOSE);
+                block(b, r);
+                break;
+            case 2:
+                // while loop
+                b.add(WHILE);
+                b.add(OPEN);
+                expression(b, r);
+                b.add(CLOSE);
+                block(b, r);
+                break;
+            case 3:
+                // do while loop
+                b.add(DO);
+                block(b, r);
+                b.add(WHILE);
+                b.add(OPEN);
+                expression(b, r);
+                b.add(CLOSE);
+                b.add(SEMICOLON);
+                break;
+            default:
+                // switch
+                b.add(SWITCH);
+                b.add(OPEN);
+                b.add(variableIds[r.nextInt(variableIds.length)]);
+                b.add(CLOSE);
+                b.add(BEGIN);
+                int nCases = caseCounts.sample(r);
+                for (int i = 0; i < nCases; i++) {
+                    b.add(CASE);
+                    b.add(value(r));
+                    b.add(COLON);
+                    block(b, r);
+                    if (r.nextDouble() < 0.5) {
+                        b.add(BREAK);
+                    }
+                }
+                if (r.nextDouble() < 0.25) {
+                    b.add(DEFAULT);
+                    b.add(COLON);
+                    block(b, r);
+                }
+                b.add(END);
+                break;
+        }
+    }
+
+    /**
+     * Append a random block
+     */
+    private static void block(TokenBuilder b, RandomGenerator r) {
+        int len = blockLengths.sample(r) + 1;
+
+        b.add(BEGIN);
+        for (int i = 0; i < len; i++) {
+            switch (itemKinds.sample(r)) {
+                case 0:
+                    declaration(b, r);
+                    break;
+                case 1:
+                    expression(b, r);
+                    b.add(SEMICOLON);
+                    break;
+                case 2:
+                    b.add(branchIds[r.nextInt(branchIds.length)]);
+                    break;
+                default:
+                    control(b, r);
+                    break;
+            }
+        }
+        b.add(END);
+    }
+
+    /**
+     * Append a random statement: a declaration, an assignment or a control
+     * statement
+     */
+    private static void statement(TokenBuilder b, RandomGenerator r) {
+        switch (statementKinds.sample(r)) {
+            case 0:
+                declaration(b, r);
+                break;
+            case 1:
+                assignment(b, r);
+                break;
+            default:
+                control(b, r);
+                break;
+        }
+    }
+
+    /**
+     * Intern the tokens of a list
+     */
+    private static int[] ids(List<String> tokens) {
+        int[] ids = new int[tokens.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Symbols.id(tokens.get(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Print a number of hundredths with two decimals, as "%.2f" would print
+     * it divided by 100
+     */
+    private static String hundredths(int n) {
+        StringBuilder sb = new StringBuilder(8);
+        if (n < 0) {
+            sb.append('-');
+            n = -n;
+        }
+        sb.append(n / 100).append('.');
+        if (n % 100 < 10) {
+            sb.append('0');
+        }
+        return sb.append(n % 100).toString();
+    }
 }
@@ -0,0 +1,252 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Times the Factory against the generator it replaced, which chained
+ * threshold comparisons, printed every decimal with String.format() and
+ * joined lists of Strings that the Statement then copied.
+ *
+ * Both make the same Statements in the same proportions, which the mean
+ * number of tokens and characters per Statement shows.
+ *
+ */
+class FactoryBenchmark {
+
+    private static final List<String> modifiers = Arrays.asList("const", "signed", "static", "unsigned");
+    private static final List<String> types = Arrays.asList("bool", "char", "double", "float", "int", "long", "short");
+    private static final List<String> branch = Arrays.asList("break;", "continue;", "return;");
+    private static final List<String> binary_operators = Arrays.asList("+", "-", "*", "/", "%", "==", "!=", ">", "<", ">=", "<=", "&&", "||", "&", "|");
+    private static final List<String> variables = Arrays.asList("i", "j", "k", "x", "y", "z", "a", "b", "c", "m", "n", "p");
+    private static final String alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    // Dummy constructor to prevent object instances
+    private FactoryBenchmark() {
+    }
+
+    /**
+     * Make a Statement the old way
+     */
+    private static Statement legacyStatement(RandomGenerator r) {
+        ArrayList<String> lst = new ArrayList<>();
+
+        double rnd = r.nextDouble();
+        if (rnd < 0.25) {
+            lst.addAll(declaration(r));
+        } else if (rnd < 0.5) {
+            lst.add(variables.get(r.nextInt(variables.size())));
+            lst.add("=");
+            lst.addAll(expression(r));
+            lst.add(";");
+        } else {
+            lst.addAll(control(r));
+        }
+        return new Statement(lst);
+    }
+
+    private static String value(RandomGenerator r) {
+        String neg = r.nextDouble() < 0.1 ? "-" : "";
+        double rnd = r.nextDouble();
+        if (rnd < 0.5) {
+            return String.format("%s%.2f", neg, (r.nextDouble() * 200) - 100);
+        } else if (rnd < 0.9) {
+            return "" + neg + (r.nextInt(200) - 100);
+        } else {
+            return "'" + (alphabet.charAt(r.nextInt(alphabet.length()))) + "'";
+        }
+    }
+
+    private static String variable(RandomGenerator r) {
+        return variables.get(r.nextInt(variables.size()));
+    }
+
+    private static String valueOrVariable(RandomGenerator r) {
+        if (r.nextDouble() < 0.5) {
+            return value(r);
+        } else if (r.nextDouble() < 0.1) {
+            double rnd2 = r.nextDouble();
+            if (rnd2 < 0.25) {
+                return "++" + variable(r);
+            } else if (rnd2 < 0.5) {
+                return "--" + variable(r);
+            } else if (rnd2 < 0.75) {
+                return variable(r) + "++";
+            } else {
+                return variable(r) + "--";
+            }
+        } else {
+            String not = r.nextDouble() < 0.1 ? "!" : "";
+            return not + variable(r);
+        }
+    }
+
+    private static ArrayList<String> expression(RandomGenerator r) {
+        ArrayList<String> lst = new ArrayList<>();
+        int len = r.nextInt(r.nextInt(8) + 1);
+        boolean parenthesis = len > 1 ? (r.nextDouble() < 0.33) : false;
+        if (parenthesis) {
+            lst.add("(");
+        }
+        lst.add(valueOrVariable(r));
+        for (int i = 1; i < len; i++) {
+            lst.add(binary_operators.get(r.nextInt(binary_operators.size())));
+            if (r.nextDouble() < 0.5) {
+                lst.add(valueOrVariable(r));
+            } else {
+                lst.addAll(expression(r));
+            }
+        }
+        if (parenthesis) {
+            lst.add(")");
+        }
+        return lst;
+    }
+
+    private static ArrayList<String> declaration(RandomGenerator r) {
+        ArrayList<String> lst = new ArrayList<>();
+        if (r.nextDouble() < 0.25) {
+            lst.add(modifiers.get(r.nextInt(modifiers.size())));
+        }
+        lst.add(types.get(r.nextInt(types.size())));
+        lst.add(variable(r));
+        double rnd = r.nextDouble();
+        if (rnd < 0.1) {
+            lst.add("=");
+            lst.addAll(expression(r));
+            lst.add("?");
+            lst.add(valueOrVariable(r));
+            lst.add(":");
+            lst.add(valueOrVariable(r));
+        } else if (rnd < 0.6) {
+            lst.add("=");
+            lst.addAll(expression(r));
+        }
+        lst.add(";");
+        return lst;
+    }
+
+    private static ArrayList<String> control(RandomGenerator r) {
+        ArrayList<String> lst = new ArrayList<>();
+        double rnd = r.nextDouble();
+        if (rnd < 0.3) {
+            lst.add("if");
+            lst.add("(");
+            lst.addAll(expression(r));
+            lst.add(")");
+            lst.addAll(block(r));
+        } else if (rnd < 0.5) {
+            lst.add("for");
+            lst.add("(");
+            lst.addAll(declaration(r));
+            lst.addAll(expression(r));
+            lst.add(";");
+            lst.addAll(expression(r));
+            lst.add(")");
+            lst.addAll(block(r));
+        } else if (rnd < 0.7) {
+            lst.add("while");
+            lst.add("(");
+            lst.addAll(expression(r));
+            lst.add(")");
+            lst.addAll(block(r));
+        } else if (rnd < 0.9) {
+            lst.add("do");
+            lst.addAll(block(r));
+            lst.add("while");
+            lst.add("(");
+            lst.addAll(expression(r));
+            lst.add(")");
+            lst.add(";");
+        } else {
+            lst.add("switch");
+            lst.add("(");
+            lst.add(variable(r));
+            lst.add(")");
+            lst.add("{");
+            int nCases = r.nextInt(r.nextInt(10) + 1);
+            for (int i = 0; i < nCases; i++) {
+                lst.add("case");
+                lst.add(value(r));
+                lst.add(":");
+                lst.addAll(block(r));
+                if (r.nextDouble() < 0.5) {
+                    lst.add("break;");
+                }
+            }
+            if (r.nextDouble() < 0.25) {
+                lst.add("default");
+                lst.add(":");
+                lst.addAll(block(r));
+            }
+            lst.add("}");
+        }
+        return lst;
+    }
+
+    private static ArrayList<String> block(RandomGenerator r) {
+        ArrayList<String> lst = new ArrayList<>();
+        int len = r.nextInt(r.nextInt(6) + 1) + 1;
+        lst.add("{");
+        for (int i = 0; i < len; i++) {
+            double rnd = r.nextDouble();
+            if (rnd < 0.2) {
+                lst.addAll(declaration(r));
+            } else if (rnd < 0.8) {
+                lst.addAll(expression(r));
+                lst.add(";");
+            } else if (rnd < 0.9) {
+                lst.add(branch.get(r.nextInt(branch.size())));
+            } else {
+                lst.addAll(control(r));
+            }
+        }
+        lst.add("}");
+        return lst;
+    }
+
+    /**
+     * Time one generator, and report its speed and the size of what it made
+     */
+    private static void time(String name, boolean legacy, int n) {
+        RandomGenerator r = Rng.get();
+        long tokens = 0;
+        long chars = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            Statement s = legacy ? legacyStatement(r) : Factory.getRandomStatement();
+            tokens += s.length();
+            chars += s.characterCount();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(name + ": " + String.format("%.0f", n / seconds) + " statements per second, "
+                + String.format("%.2f", (double) tokens / n) + " tokens and "
+                + String.format("%.2f", (double) chars / n) + " characters per statement");
+    }
+
+    /**
+     * Compare the generators, after a round of each to warm up
+     *
+     * Usage: FactoryBenchmark [statements [rounds]]
+     *
+     * @param args the number of Statements per round, 200000 by default,
+     * and the number of rounds, 3 by default
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        time("Warm up, legacy", true, n);
+        time("Warm up, Factory", false, n);
+        for (int round = 0; round < rounds; round++) {
+            time("Legacy ", true, n);
+            time("Factory", false, n);
+        }
+    }
+}
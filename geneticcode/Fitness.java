@@ -8,16 +8,20 @@
  */
 package geneticcode;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,20 +36,490 @@ public class Fitness {
     private static final double LENGTH_WORD_BONUS = 1.0;
     private static final double LENGTH_CHAR_BONUS = 0.1;
 
+    /**
+     * Number of gcc processes to run at once, defaults to one per core
+     */
+    public static int WORKERS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of compile results to remember, 0 turns the cache off
+     */
+    public static int CACHE_SIZE = 20000;
+
+    /**
+     * File shared by every run on this host to remember compile results, null
+     * turns it off
+     */
+    public static String DISK_CACHE = null;
+    /**
+     * Size cap for a new DISK_CACHE file
+     */
+    public static long DISK_CACHE_BYTES = DiskCache.DEFAULT_MAX_BYTES;
+
+    /**
+     * Number of Programs to compile per gcc invocation, 1 compiles each
+     * Program on its own
+     */
+    public static int BATCH_SIZE = 1;
+    /**
+     * Check every batched result against a single compile (slow, for
+     * testing). Unchecked batched results are estimates, which are not
+     * cached.
+     */
+    public static boolean BATCH_VERIFY = false;
+
+    /**
+     * Pipe each Program into gcc instead of writing it to a scratch file.
+     * gcc cannot quote source lines it read from a pipe, so error outputs are
+     * shorter and scores are not comparable with file compiles.
+     */
+    public static boolean COMPILE_STDIN = false;
+
+    /**
+     * Stop gcc once it has written more than this many words of errors, and
+     * use this many as the penalty. 0 lets gcc finish.
+     */
+    public static long ERROR_WORD_CEILING = 0;
+    /**
+     * Kill gcc if a compile takes longer than this many milliseconds. 0 lets
+     * gcc take as long as it needs.
+     */
+    public static long COMPILE_TIMEOUT_MS = 0;
+    /**
+     * Kill gcc if it writes more than this many bytes of errors. 0 lets gcc
+     * write as much as it wants.
+     */
+    public static long STDERR_MAX_BYTES = 0;
+    /**
+     * Error words charged to a compile killed for taking too long or writing
+     * too much
+     */
+    public static int STRAGGLER_ERROR_WORDS = 10000;
+    /**
+     * Number of bytes of error output kept in each Program for display
+     */
+    public static int STDERR_DISPLAY = 8192;
+
+    /**
+     * Stop compiling a Program once its errors sink its score below the
+     * PRUNE_RANK-th best score of the last generation, since it would not
+     * survive selection anyway. 0 turns pruning off. Batched compiles are
+     * never pruned.
+     */
+    public static int PRUNE_RANK = 0;
+
+    /**
+     * Programs the SyntaxChecker expects to produce more error words than
+     * this are not compiled, and are scored with the estimate instead. 0 sends
+     * everything to gcc.
+     */
+    public static double SYNTAX_SKIP = 0;
+
+    /**
+     * Fraction of each generation's uncached Programs sent to gcc, best
+     * predicted first. The rest are scored by the Surrogate. 1 compiles
+     * everything.
+     */
+    public static double SURROGATE_FRACTION = 1.0;
+    /**
+     * Fraction of the Programs left to the Surrogate that are compiled anyway,
+     * picked at random, so the model keeps learning where it is wrong
+     */
+    public static double SURROGATE_EXPLORE = 0.1;
+    /**
+     * Number of real compiles the Surrogate learns from before it is trusted
+     */
+    public static int SURROGATE_WARMUP = 500;
+
+    // Results of earlier compiles, keyed by program text
+    private static FitnessCache cache;
+    private static DiskCache diskCache;
+    private static Surrogate surrogate;
+
+    // Scores below this do not survive, NaN until the first generation
+    private static volatile double pruneBound = Double.NaN;
+    private static final AtomicLong pruned = new AtomicLong();
+
     // Dummy constructor to prevent object instances
     private Fitness() {
     }
 
+    /**
+     * Get the cache of compile results
+     *
+     * @return the cache, or null if CACHE_SIZE is 0
+     */
+    public static synchronized FitnessCache getCache() {
+        if (cache == null && CACHE_SIZE > 0) {
+            cache = new FitnessCache(CACHE_SIZE);
+        }
+        return cache;
+    }
+
+    /**
+     * Get the persistent cache of compile results
+     *
+     * @return the cache, or null if DISK_CACHE is not set or cannot be opened
+     */
+    public static synchronized DiskCache getDiskCache() {
+        if (diskCache == null && DISK_CACHE != null) {
+            try {
+                diskCache = new DiskCache(Paths.get(DISK_CACHE), DISK_CACHE_BYTES);
+            } catch (IOException ex) {
+                Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex);
+                DISK_CACHE = null;
+            }
+        }
+        return diskCache;
+    }
+
+    /**
+     * Get the model that learns to predict compile results, trained on every
+     * real compile
+     *
+     * @return the surrogate model
+     */
+    public static synchronized Surrogate getSurrogate() {
+        if (surrogate == null) {
+            surrogate = new Surrogate();
+        }
+        return surrogate;
+    }
+
+    /**
+     * Set the lowest score that can still survive selection. fitness() sets it
+     * from each generation when PRUNE_RANK is set, other engines may set
+     * their own.
+     *
+     * @param bound the survival threshold, or NaN for none
+     */
+    public static void setPruneBound(double bound) {
+        pruneBound = bound;
+    }
+
+    /**
+     * Get the lowest score that can still survive selection
+     *
+     * @return the survival threshold, or NaN for none
+     */
+    public static double getPruneBound() {
+        return pruneBound;
+    }
+
+    /**
+     * Get the number of compiles given up on because the Program could not
+     * survive
+     *
+     * @return the pruned count
+     */
+    public static long getPruned() {
+        return pruned.get() + Watchdog.getStopped(Watchdog.Reason.PRUNED);
+    }
+
     /**
      * Update the fitness score for the entire population
      *
+     * Programs are compiled on a pool of WORKERS threads, each with its own
+     * scratch directory. Clones are compiled once, and anything already in the
+     * cache is not compiled at all. With SURROGATE_FRACTION below 1, only the
+     * most promising Programs are compiled once the Surrogate has warmed up,
+     * and the others get its predicted score.
+     *
      * @param population the population to score
      */
-    public static synchronized void fitness(ArrayList<Program> population) {
-        List<Program> lst = Collections.synchronizedList(population);        
-        lst.stream().forEach(p -> Fitness.fitness(p));
+    public static void fitness(ArrayList<Program> population) {
+        ExecutorService pool = Compiler.pool();
+        FitnessCache cache = getCache();
+
+        // Selection copies references, so only score each Program once,
+        // and group clones by their text
+        Set<Program> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<ProgramKey, List<Program>> clones = new LinkedHashMap<>();
+        for (Program p : population) {
+            if (seen.add(p)) {
+                clones.computeIfAbsent(key(p), k -> new ArrayList<>()).add(p);
+            }
+        }
+
+        List<ProgramKey> misses = new ArrayList<>();
+        for (Map.Entry<ProgramKey, List<Program>> group : clones.entrySet()) {
+            FitnessCache.Entry hit = cache == null ? null : cache.get(group.getKey());
+            if (hit != null) {
+                // Seen before, skip gcc
+                for (Program p : group.getValue()) {
+                    p.setScore(hit.getScore());
+                    p.setStdError(hit.getResult().getStdError());
+                    p.setSurrogate(false);
+                }
+            } else {
+                misses.add(group.getKey());
+            }
+        }
+
+        // Let the Surrogate keep the least promising Programs away from gcc
+        Map<ProgramKey, Double> predicted = null;
+        if (SURROGATE_FRACTION < 1) {
+            predicted = new LinkedHashMap<>();
+            misses = screen(misses, clones, predicted);
+        }
+
+        List<Future<?>> jobs = new ArrayList<>();
+        List<ProgramKey> batch = new ArrayList<>();
+        for (ProgramKey key : misses) {
+            List<Program> programs = clones.get(key);
+            if (BATCH_SIZE > 1) {
+                batch.add(key);
+                if (batch.size() == BATCH_SIZE) {
+                    List<ProgramKey> keys = batch;
+                    jobs.add(pool.submit(() -> fitness(keys, clones)));
+                    batch = new ArrayList<>();
+                }
+            } else {
+                jobs.add(pool.submit(() -> {
+                    fitness(programs.get(0), key);
+                    copyScore(programs);
+                }));
+            }
+        }
+        if (!batch.isEmpty()) {
+            List<ProgramKey> keys = batch;
+            jobs.add(pool.submit(() -> fitness(keys, clones)));
+        }
+
+        // Wait for the whole generation
+        for (Future<?> job : jobs) {
+            try {
+                job.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            } catch (ExecutionException ex) {
+                Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex.getCause());
+            }
+        }
+
+        if (predicted != null) {
+            rankCorrelation(misses, clones, predicted);
+        }
+        finish(population);
+    }
+
+    /**
+     * Finish scoring a population whose Programs were each passed to
+     * fitnessAsync() as they were made, as fitness() would have scored it
+     *
+     * @param population the population to score
+     * @param scoring what fitnessAsync() returned for each Program
+     */
+    public static void fitness(ArrayList<Program> population, List<CompletableFuture<Program>> scoring) {
+        for (CompletableFuture<Program> job : scoring) {
+            try {
+                job.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            } catch (ExecutionException ex) {
+                Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex.getCause());
+            }
+        }
+        finish(population);
+    }
+
+    /**
+     * Check if fitnessAsync() scores Programs as fitness() would, which it
+     * does unless Programs are batched or screened by the Surrogate
+     *
+     * @return true if Programs can be scored one at a time
+     */
+    public static boolean isAsyncExact() {
+        return BATCH_SIZE <= 1 && SURROGATE_FRACTION >= 1;
+    }
+
+    /**
+     * Sort a scored population, and bound the next generation by it
+     */
+    private static void finish(ArrayList<Program> population) {
+        Watchdog.report();
+
         // Sort the population by score
         Collections.sort(population);
+
+        // The next generation only matters if it beats the k-th best of this
+        if (PRUNE_RANK > 0 && !population.isEmpty()) {
+            setPruneBound(population.get(Math.max(0, population.size() - PRUNE_RANK)).getScore());
+        }
+    }
+
+    /**
+     * Score a single Program on the worker pool without waiting for it
+     *
+     * A cached result completes at once. Batching and the Surrogate only
+     * apply to whole populations, so every other Program is compiled on its
+     * own.
+     *
+     * @param program the Program to score
+     * @return completes with the same Program once its score is set
+     */
+    public static CompletableFuture<Program> fitnessAsync(Program program) {
+        ProgramKey key = key(program);
+        FitnessCache cache = getCache();
+        FitnessCache.Entry hit = cache == null ? null : cache.get(key);
+        if (hit != null) {
+            program.setScore(hit.getScore());
+            program.setStdError(hit.getResult().getStdError());
+            program.setSurrogate(false);
+            return CompletableFuture.completedFuture(program);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            fitness(program, key);
+            return program;
+        }, Compiler.pool());
+    }
+
+    /**
+     * Pick the Programs to compile, and score the rest with the Surrogate
+     *
+     * @param misses the keys of the Programs not in the cache
+     * @param clones the Programs for each key
+     * @param predicted filled with the predicted error words of each key
+     * @return the keys to compile
+     */
+    private static List<ProgramKey> screen(List<ProgramKey> misses,
+            Map<ProgramKey, List<Program>> clones, Map<ProgramKey, Double> predicted) {
+        Surrogate model = getSurrogate();
+        Map<ProgramKey, Double> estimate = new LinkedHashMap<>();
+        for (ProgramKey key : misses) {
+            Program first = clones.get(key).get(0);
+            double words = model.predict(first);
+            predicted.put(key, words);
+            estimate.put(key, bonus(first) + ERROR_WORD_PENALTY * words);
+        }
+        if (model.getSamples() < SURROGATE_WARMUP) {
+            // Not trained yet, compile everything and learn from it
+            return misses;
+        }
+
+        // Best predicted score first
+        List<ProgramKey> ranked = new ArrayList<>(misses);
+        ranked.sort((a, b) -> Double.compare(estimate.get(b), estimate.get(a)));
+        int top = (int) Math.ceil(SURROGATE_FRACTION * ranked.size());
+        List<ProgramKey> compile = new ArrayList<>(ranked.subList(0, top));
+        List<ProgramKey> rest = new ArrayList<>(ranked.subList(top, ranked.size()));
+
+        // Explore a few of the others, in case the model is wrong about them
+        Rng.shuffle(rest);
+        int explore = (int) Math.ceil(SURROGATE_EXPLORE * rest.size());
+        compile.addAll(rest.subList(0, explore));
+
+        for (ProgramKey key : rest.subList(explore, rest.size())) {
+            long words = Math.round(predicted.get(key));
+            for (Program p : clones.get(key)) {
+                p.setScore(estimate.get(key));
+                p.setStdError("Not compiled: the surrogate expects about " + words + " words of errors");
+                p.setSurrogate(true);
+            }
+        }
+        return compile;
+    }
+
+    /**
+     * Compare the Surrogate's predictions with what gcc reported this
+     * generation, and log the rank correlation
+     *
+     * @param compiled the keys of the Programs sent to gcc
+     * @param clones the Programs for each key
+     * @param predicted the predicted error words of each key
+     */
+    private static void rankCorrelation(List<ProgramKey> compiled,
+            Map<ProgramKey, List<Program>> clones, Map<ProgramKey, Double> predicted) {
+        if (compiled.size() < 2) {
+            return;
+        }
+        double[] guess = new double[compiled.size()];
+        double[] actual = new double[compiled.size()];
+        for (int i = 0; i < compiled.size(); i++) {
+            Program first = clones.get(compiled.get(i)).get(0);
+            guess[i] = predicted.get(compiled.get(i));
+            actual[i] = (first.getScore() - bonus(first)) / ERROR_WORD_PENALTY;
+        }
+        Surrogate model = getSurrogate();
+        double rho = model.recordGeneration(guess, actual);
+        Logger.getLogger(Fitness.class.getName()).log(Level.INFO,
+                "Surrogate rank correlation {0} over {1} compiles, {2} samples learned",
+                new Object[]{rho, compiled.size(), model.getSamples()});
+    }
+
+    /**
+     * Make the cache key of a Program, which also tells apart the two ways of
+     * compiling since they count different error words
+     *
+     * @param program the Program
+     * @return the key
+     */
+    private static ProgramKey key(Program program) {
+        return COMPILE_STDIN ? ProgramKey.of("-x c++ -\n" + program) : ProgramKey.of(program);
+    }
+
+    /**
+     * Give every clone the score of the first
+     *
+     * @param clones Programs with the same text, the first one scored
+     */
+    private static void copyScore(List<Program> clones) {
+        Program first = clones.get(0);
+        for (Program p : clones) {
+            p.setScore(first.getScore());
+            p.setStdError(first.getStdError());
+            p.setSurrogate(first.isSurrogate());
+        }
+    }
+
+    /**
+     * Calculate the fitness score of a batch of Programs with one gcc
+     * invocation.
+     *
+     * @param keys the keys of the Programs to score
+     * @param clones the Programs for each key, the first one is compiled
+     */
+    private static void fitness(List<ProgramKey> keys, Map<ProgramKey, List<Program>> clones) {
+        try {
+            // Another run may already have compiled some of these programs
+            DiskCache disk = getDiskCache();
+            List<ProgramKey> todo = new ArrayList<>();
+            List<Program> programs = new ArrayList<>();
+            for (ProgramKey key : keys) {
+                Program first = clones.get(key).get(0);
+                CompileResult result = disk == null ? null : disk.get(key);
+                if (result == null) {
+                    result = precheck(first);
+                }
+                if (result == null) {
+                    todo.add(key);
+                    programs.add(first);
+                } else {
+                    record(first, key, result);
+                }
+            }
+
+            CompileResult[] results = BatchCompiler.compile(programs);
+            for (int i = 0; i < results.length; i++) {
+                if (disk != null && results[i].isExact()) {
+                    disk.put(todo.get(i), results[i]);
+                }
+                record(programs.get(i), todo.get(i), results[i]);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        for (ProgramKey key : keys) {
+            copyScore(clones.get(key));
+        }
     }
 
     /**
@@ -55,64 +529,151 @@ public class Fitness {
      * error output.
      *
      * This method updates the Program's fitness score, and also returns it.
+     * The persistent cache and the SyntaxChecker are consulted before running
+     * gcc, and the result is stored in both caches under the given key. gcc
+     * is stopped early once the Program cannot beat the prune bound.
      *
      * @param program the program to compile
+     * @param key the key of the rendered program
      * @return the score
      */
-    private static synchronized double fitness(Program program) {
-
-        // initial score
-        double score = 0;
-
-        // One point for each token in solution (favors long programs)
-        score += LENGTH_WORD_BONUS * program.length();
-
-        // One-tenth point for each character in solution (favors long programs)
-        score += LENGTH_CHAR_BONUS * program.toString().replaceAll("\\s", "").replaceAll(";", "").length();
-
-        // Two points for each unique token (favors diversity)
-        score += UNIQUE_WORD_BONUS * (new HashSet<>(new ArrayList<>(Arrays.asList(program.toString().split("\\s"))))).size();
-
+    private static double fitness(Program program, ProgramKey key) {
         // Now compile and count the errors
         String progstr = "" + program;   // Call toString and convert to text
         try {
-            // Make a temporary file called "main.cpp"
-            BufferedWriter writer = new BufferedWriter(new FileWriter("./main.cpp"));
-            writer.write(progstr);
-            writer.close();
-
-            // Use system command to compile using gcc
-            //Process p = Runtime.getRuntime().exec("gcc -Wall -pedantic ./main.cpp");
-            Process p = Runtime.getRuntime().exec("gcc -pipe ./main.cpp");
-
-            String s = null;
-            //BufferedReader stdInput = new BufferedReader(new InputStreamReader(p.getInputStream()));
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-
-            // Read any errors from gcc and concat them
-            String stderr = "";
-            while ((s = stdError.readLine()) != null) {
-                if (!s.trim().equals(" ")) {
-                    stderr += s;
+            // Another run may already have compiled this program
+            DiskCache disk = getDiskCache();
+            CompileResult result = disk == null ? null : disk.get(key);
+            if (result == null) {
+                result = precheck(program);
+            }
+            if (result == null) {
+                result = prune(program);
+            }
+            if (result == null) {
+                result = Compiler.compile(progstr, maxErrorWords(program));
+                if (disk != null && result.isExact()) {
+                    disk.put(key, result);
                 }
             }
-            stderr = stderr.trim();
+            return record(program, key, result);
+        } catch (IOException ex) {
+            Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        // Could not compile, so only the bonuses count
+        double score = bonus(program);
+        program.setScore(score);
+        return score;
+    }
 
-            // Save the error output
-            //System.out.println("Error: "+stderr);
-            program.setStdError(stderr);
+    /**
+     * Score a Program from its compile result, and remember the result in the
+     * cache
+     *
+     * @param program the compiled program
+     * @param key the key of the rendered program
+     * @param result the error output and its word count
+     * @return the score
+     */
+    private static double record(Program program, ProgramKey key, CompileResult result) {
+        double score = bonus(program);
 
-            // Count the number of words (split by whitespace) in compiler error output
-            int err = stderr.split("\\s").length - 1;
+        // Save the error output
+        program.setStdError(result.getStdError());
+        program.setSurrogate(false);
 
-            // Subtract the number of error-words from the total score
-            score += ERROR_WORD_PENALTY * err;
-        } catch (IOException ex) {
-            Logger.getLogger(Fitness.class.getName()).log(Level.SEVERE, null, ex);
+        // Subtract the number of error-words from the total score
+        score += ERROR_WORD_PENALTY * result.getErrorWords();
+
+        // Estimates are not worth remembering, or learning from
+        FitnessCache cache = getCache();
+        if (cache != null && result.isExact()) {
+            cache.put(key, score, result);
+        }
+        if (SURROGATE_FRACTION < 1 && result.isExact()) {
+            getSurrogate().train(program, result.getErrorWords());
         }
 
         // Update the program's score
         program.setScore(score);
         return score;
     }
+
+    /**
+     * Work out the most error words a Program can have and still score above
+     * the prune bound
+     *
+     * @param program the program to compile
+     * @return the error-word budget, or -1 if there is no bound
+     */
+    private static long maxErrorWords(Program program) {
+        double bound = pruneBound;
+        if (PRUNE_RANK <= 0 || Double.isNaN(bound)) {
+            return -1;
+        }
+        double words = (bonus(program) - bound) / -ERROR_WORD_PENALTY;
+        return words < 0 ? 0 : (long) Math.floor(words);
+    }
+
+    /**
+     * Check if a Program cannot reach the prune bound even with no errors
+     *
+     * @param program the program to check
+     * @return a pruned result if gcc should be skipped, otherwise null
+     */
+    private static CompileResult prune(Program program) {
+        double bound = pruneBound;
+        if (PRUNE_RANK <= 0 || Double.isNaN(bound) || bonus(program) >= bound) {
+            return null;
+        }
+        pruned.incrementAndGet();
+        return new CompileResult(0, "Not compiled: pruned, cannot score above " + bound, false);
+    }
+
+    /**
+     * Ask the SyntaxChecker if a Program is hopeless enough to skip gcc
+     *
+     * @param program the program to check
+     * @return an estimated result if gcc should be skipped, otherwise null
+     */
+    private static CompileResult precheck(Program program) {
+        if (SYNTAX_SKIP <= 0) {
+            return null;
+        }
+        double words = SyntaxChecker.estimateErrorWords(program);
+        if (words <= SYNTAX_SKIP) {
+            return null;
+        }
+        return new CompileResult((int) Math.round(words),
+                "Not compiled: the syntax check expects about " + Math.round(words) + " words of errors", false);
+    }
+
+    /**
+     * Calculate the part of the score that needs no compiling
+     *
+     * @param program the program to score
+     * @return the length and diversity bonuses
+     */
+    private static double bonus(Program program) {
+        // Tokens, characters and unique words, from the Program's running totals
+        StructuralBonus counts = new StructuralBonus().measure(program);
+
+        // initial score
+        double score = 0;
+
+        // One point for each token in solution (favors long programs)
+        score += LENGTH_WORD_BONUS * counts.getLength();
+
+        // One-tenth point for each character in solution (favors long programs)
+        score += LENGTH_CHAR_BONUS * counts.getChars();
+
+        // Two points for each unique token (favors diversity)
+        score += UNIQUE_WORD_BONUS * counts.getUnique();
+
+        return score;
+    }
 }
@@ -0,0 +1,182 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of compile results keyed by ProgramKey.
+ *
+ * Eviction is segmented LRU: new entries land in a probation segment, and are
+ * promoted to a protected segment when hit again. Clones that survive several
+ * generations stay protected, while one-off mutants cycle through probation.
+ *
+ */
+public class FitnessCache {
+
+    /**
+     * A cached score together with the compile result that produced it
+     */
+    public static final class Entry {
+
+        private final double score;
+        private final CompileResult result;
+
+        Entry(double score, CompileResult result) {
+            this.score = score;
+            this.result = result;
+        }
+
+        /**
+         * Get the cached fitness score
+         *
+         * @return the score
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * Get the cached compile result
+         *
+         * @return the error output and its word count
+         */
+        public CompileResult getResult() {
+            return result;
+        }
+    }
+
+    // Share of the capacity reserved for entries hit at least twice
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final int probationCapacity;
+    private final int protectedCapacity;
+
+    // Both segments are kept in access order, eldest first
+    private final LinkedHashMap<ProgramKey, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<ProgramKey, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Construct a new, empty cache
+     *
+     * @param capacity the maximum number of entries
+     */
+    public FitnessCache(int capacity) {
+        capacity = Math.max(capacity, 1);
+        protectedCapacity = (int) (capacity * PROTECTED_SHARE);
+        probationCapacity = Math.max(capacity - protectedCapacity, 1);
+    }
+
+    /**
+     * Look up a cached result, promoting it on a hit
+     *
+     * @param key the key of the rendered Program
+     * @return the entry if present, otherwise null
+     */
+    public synchronized Entry get(ProgramKey key) {
+        Entry entry = protectedSegment.get(key);
+        if (entry != null) {
+            hits++;
+            return entry;
+        }
+        entry = probation.remove(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+
+        // Second hit, so promote and demote the coldest protected entry
+        protectedSegment.put(key, entry);
+        if (protectedSegment.size() > protectedCapacity) {
+            Iterator<Map.Entry<ProgramKey, Entry>> eldest = protectedSegment.entrySet().iterator();
+            Map.Entry<ProgramKey, Entry> demoted = eldest.next();
+            eldest.remove();
+            insertProbation(demoted.getKey(), demoted.getValue());
+        }
+        return entry;
+    }
+
+    /**
+     * Store a result in the cache
+     *
+     * @param key the key of the rendered Program
+     * @param score the fitness score
+     * @param result the compile result
+     */
+    public synchronized void put(ProgramKey key, double score, CompileResult result) {
+        Entry entry = new Entry(score, result);
+        if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, entry);
+        } else {
+            insertProbation(key, entry);
+        }
+    }
+
+    /**
+     * Add to the probation segment, evicting the coldest entry if full
+     */
+    private void insertProbation(ProgramKey key, Entry entry) {
+        probation.put(key, entry);
+        if (probation.size() > probationCapacity) {
+            Iterator<ProgramKey> eldest = probation.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Count the entries in the cache
+     *
+     * @return the number of cached results
+     */
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * Get the number of lookups that found a result
+     *
+     * @return the hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that found nothing
+     *
+     * @return the miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of entries dropped to make room
+     *
+     * @return the eviction count
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Creates a String summary of the cache counters
+     *
+     * @return the counters as a String
+     */
+    @Override
+    public synchronized String toString() {
+        return "FitnessCache[size=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
@@ -0,0 +1,1208 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds random grammar trees for typed Statements, and changes them without
+ * leaving the grammar.
+ *
+ * The productions and their odds are those of Factory.getRandomStatement()
+ * and the methods it calls, and the terminals come from the Factory, so a
+ * typed Statement reads like a flat one. On top of the grammar, a Scope keeps
+ * the variables declared so far, their types, and whether a loop or switch
+ * encloses the code, so that a tree:
+ *
+ * - only uses variables declared before it, and never declares one twice in
+ * the same scope
+ *
+ * - only increments or decrements variables that are neither const nor bool,
+ * and only assigns to those that are not const
+ *
+ * - only uses %, &amp; and | in expressions whose operands are all integral,
+ * and only puts signed and unsigned on integral types
+ *
+ * - gives every const an initializer, and every switch an integral variable
+ * and distinct, non-negative integral case labels
+ *
+ * - only breaks inside a loop or switch, only continues inside a loop, and
+ * returns a value, as main() must in C++
+ *
+ * Mutation replaces a random subtree with a new one built for its place,
+ * and crossover with a subtree of another tree that the same checks accept
+ * there. A declaration is only ever replaced by one of the same variable and
+ * type, since the code after it may use the variable.
+ *
+ */
+class Grammar {
+
+    // Tries to find a subtree of the donor fitting a random place
+    private static final int CROSSOVER_TRIES = 8;
+
+    // Types that %, & and | accept, and those signed and unsigned apply to
+    private static final List<String> INTEGRAL = Arrays.asList("bool", "char", "int", "long", "short");
+    private static final List<String> SIGNABLE = Arrays.asList("char", "int", "long", "short");
+    private static final List<String> INTEGRAL_OPERATORS = Arrays.asList("%", "&", "|");
+    private static final List<String> MODIFIERS = Arrays.asList("const", "signed", "static", "unsigned");
+
+    // Dummy constructor to prevent object instances
+    private Grammar() {
+    }
+
+    /**
+     * The variables visible at some point of a Program, and the loop or
+     * switch enclosing it. Scopes never change; declaring a variable gives a
+     * new one.
+     */
+    static final class Scope {
+
+        /**
+         * The top level of main(), before any Statement
+         */
+        static final Scope TOP = new Scope(null, new HashMap<>(), false, false);
+
+        private final Scope parent;
+        // Variables declared at this level, to their types, "const " first if
+        // they are constant
+        private final Map<String, String> types;
+        private final boolean loop;
+        private final boolean breakable;
+
+        private Scope(Scope parent, Map<String, String> types, boolean loop, boolean breakable) {
+            this.parent = parent;
+            this.types = types;
+            this.loop = loop;
+            this.breakable = breakable;
+        }
+
+        /**
+         * Get the scope of the top level of main() before a Statement,
+         * holding what the Statements before it declare
+         *
+         * @param statements the Statements of a Program
+         * @param index the position of the Statement
+         * @return the scope
+         */
+        static Scope before(List<Statement> statements, int index) {
+            Scope s = TOP;
+            for (int i = 0; i < index && i < statements.size(); i++) {
+                String[] d = declared(statements.get(i));
+                if (d != null) {
+                    s = s.declare(d);
+                }
+            }
+            return s;
+        }
+
+        /**
+         * Open a new level of scope inside this one
+         *
+         * @param loop true if the new level is the body of a loop
+         * @param breakable true if the new level is the body of a loop or
+         * switch
+         * @return the new scope
+         */
+        Scope nested(boolean loop, boolean breakable) {
+            return new Scope(this, new HashMap<>(), this.loop || loop, this.breakable || breakable || loop);
+        }
+
+        /**
+         * Make the same level the body of a loop, as the body of a for loop
+         * shares the level of what the loop declares
+         *
+         * @return the new scope
+         */
+        Scope looping() {
+            return new Scope(parent, types, true, true);
+        }
+
+        /**
+         * Declare a variable at this level
+         *
+         * @param declaration the modifier or null, the type, and the variable
+         * @return the new scope
+         */
+        Scope declare(String[] declaration) {
+            Map<String, String> more = new HashMap<>(types);
+            more.put(declaration[2], ("const".equals(declaration[0]) ? "const " : "") + declaration[1]);
+            return new Scope(parent, more, loop, breakable);
+        }
+
+        /**
+         * Get the type of a visible variable
+         *
+         * @param var the variable
+         * @return the type, with "const " first if constant, or null if the
+         * variable is not declared
+         */
+        String type(String var) {
+            for (Scope s = this; s != null; s = s.parent) {
+                String t = s.types.get(var);
+                if (t != null) {
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Check if a variable is declared at this level
+         *
+         * @param var the variable
+         * @return true if declaring it again here would not compile
+         */
+        boolean declaredHere(String var) {
+            return types.containsKey(var);
+        }
+
+        /**
+         * List the visible variables of the given kind
+         *
+         * @param integral true for integral types only
+         * @param assignable true for those neither const nor, if
+         * incremented, bool
+         * @param increment true if the variable is to be incremented
+         * @return the variables
+         */
+        List<String> visible(boolean integral, boolean assignable, boolean increment) {
+            Set<String> seen = new HashSet<>();
+            List<String> vars = new ArrayList<>();
+            for (Scope s = this; s != null; s = s.parent) {
+                for (Map.Entry<String, String> e : s.types.entrySet()) {
+                    // Inner declarations hide outer ones
+                    if (seen.add(e.getKey()) && fits(e.getValue(), integral, assignable, increment)) {
+                        vars.add(e.getKey());
+                    }
+                }
+            }
+            // Map order would favour some variables over others in a run
+            Collections.sort(vars);
+            return vars;
+        }
+
+        private static boolean fits(String type, boolean integral, boolean assignable, boolean increment) {
+            boolean constant = type.startsWith("const ");
+            String base = constant ? type.substring(6) : type;
+            return (!integral || INTEGRAL.contains(base)) && (!assignable || !constant)
+                    && (!increment || !base.equals("bool"));
+        }
+    }
+
+    /**
+     * Build random typed Statements for a new Program, declarations first,
+     * as Factory.makeRandomProgram()
+     *
+     * @param kStatements the number of Statements
+     * @return the Statements
+     */
+    static ArrayList<Statement> program(int kStatements) {
+        ArrayList<Statement> statements = new ArrayList<>();
+        Scope s = Scope.TOP;
+        Set<String> none = Collections.emptySet();
+        int nDeclarations = (int) Math.round(kStatements * 0.25);
+        for (int k = 0; k < kStatements; k++) {
+            Node n = k < nDeclarations ? declaration(s, none) : null;
+            if (n == null) {
+                n = statement(s, none);
+            }
+            if (n.kind() == Node.Kind.DECLARATION) {
+                s = s.declare(declared(n.flatten()));
+            }
+            statements.add(new Statement(n));
+        }
+        return statements;
+    }
+
+    /**
+     * Build a random typed Statement to insert into a Program
+     *
+     * @param statements the Statements of the Program
+     * @param index where the new Statement goes
+     * @param taken the variables declared at the top level, which the new
+     * Statement adds to if it declares one
+     * @return the Statement
+     */
+    static Statement statement(List<Statement> statements, int index, Set<String> taken) {
+        Node n = statement(Scope.before(statements, index), taken);
+        if (n.kind() == Node.Kind.DECLARATION) {
+            taken.add(declared(n.flatten())[2]);
+        }
+        return new Statement(n);
+    }
+
+    /**
+     * List the variables declared at the top level of a Program
+     *
+     * @param statements the Statements of the Program
+     * @param except the position of a Statement to leave out, or -1
+     * @return the variables
+     */
+    static Set<String> declared(List<Statement> statements, int except) {
+        Set<String> vars = new HashSet<>();
+        for (int i = 0; i < statements.size(); i++) {
+            String[] d = i == except ? null : declared(statements.get(i));
+            if (d != null) {
+                vars.add(d[2]);
+            }
+        }
+        return vars;
+    }
+
+    /**
+     * Build a random Statement, as Factory.getRandomStatement()
+     *
+     * @param s the scope
+     * @param taken variables a declaration must not use
+     * @return the tree
+     */
+    static Node statement(Scope s, Set<String> taken) {
+        double rnd = Rng.get().nextDouble();
+        Node d = rnd < 0.25 ? declaration(s, taken) : null;
+        if (d != null) {
+            return d;
+        } else if (rnd < 0.5) {
+            return assignment(s, taken);
+        } else {
+            return control(s);
+        }
+    }
+
+    /**
+     * Build a random declaration of a variable not yet visible, as
+     * Factory.getRandomDeclaration(). Hiding a visible variable would change
+     * the type of what follows in the same block, so that is never done.
+     *
+     * @param s the scope
+     * @param taken variables it must not use
+     * @return the tree, or null if every variable is taken
+     */
+    static Node declaration(Scope s, Set<String> taken) {
+        String var = fresh(s, taken);
+        if (var == null) {
+            return null;
+        }
+        String modifier = Rng.get().nextDouble() < 0.25 ? Factory.getRandomModifier() : null;
+        String type = Factory.getRandomType();
+        if (("signed".equals(modifier) || "unsigned".equals(modifier)) && !SIGNABLE.contains(type)) {
+            type = SIGNABLE.get(Rng.get().nextInt(SIGNABLE.size()));
+        }
+        return declaration(s, modifier, type, var);
+    }
+
+    /**
+     * Pick a random variable neither visible nor taken, or null if there is
+     * none, which is likely once the variables of the Factory run out
+     */
+    private static String fresh(Scope s, Set<String> taken) {
+        for (int t = 0; t < 64; t++) {
+            String var = Factory.getRandomVariable();
+            if (s.type(var) == null && !taken.contains(var)) {
+                return var;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build a declaration of the given variable with a random initializer
+     */
+    private static Node declaration(Scope s, String modifier, String type, String var) {
+        List<Object> parts = new ArrayList<>();
+        if (modifier != null) {
+            parts.add(modifier);
+        }
+        parts.add(type);
+        parts.add(var);
+
+        double rnd = Rng.get().nextDouble();
+        if ("const".equals(modifier) && rnd >= 0.6) {
+            // A const must be initialized
+            rnd = Rng.get().nextDouble() * 0.6;
+        } else if ("static".equals(modifier)) {
+            // and a static must not be, see check()
+            rnd = 1;
+        }
+        if (rnd < 0.1) {
+            parts.add("=");
+            parts.add(expression(s, Rng.get().nextBoolean()));
+            parts.add("?");
+            parts.add(operand(s, false));
+            parts.add(":");
+            parts.add(operand(s, false));
+        } else if (rnd < 0.6) {
+            parts.add("=");
+            parts.add(expression(s, Rng.get().nextBoolean()));
+        }
+        parts.add(";");
+        return new Node(Node.Kind.DECLARATION, parts);
+    }
+
+    /**
+     * Build a random assignment, as Factory.getRandomAssignment(), or a
+     * declaration if no variable can be assigned, or an expression if none
+     * can be declared either
+     *
+     * @param s the scope
+     * @param taken variables a declaration must not use
+     * @return the tree
+     */
+    static Node assignment(Scope s, Set<String> taken) {
+        List<String> targets = s.visible(false, true, false);
+        if (targets.isEmpty()) {
+            Node d = declaration(s, taken);
+            return d != null ? d : expressionStatement(s);
+        }
+        List<Object> parts = new ArrayList<>();
+        parts.add(targets.get(Rng.get().nextInt(targets.size())));
+        parts.add("=");
+        parts.add(expression(s, Rng.get().nextBoolean()));
+        parts.add(";");
+        return new Node(Node.Kind.ASSIGNMENT, parts);
+    }
+
+    /**
+     * Build a random expression, as Factory.getRandomExpression()
+     *
+     * @param s the scope
+     * @param integral true if every operand must be integral, which allows
+     * %, &amp; and |
+     * @return the tree
+     */
+    static Node expression(Scope s, boolean integral) {
+        List<Object> parts = new ArrayList<>();
+        int len = Rng.get().nextInt(Rng.get().nextInt(8) + 1);
+        boolean parenthesis = len > 1 && Rng.get().nextDouble() < 0.33;
+
+        if (parenthesis) {
+            parts.add("(");
+        }
+        parts.add(operand(s, integral));
+        for (int i = 1; i < len; i++) {
+            String op = Factory.getRandomOperator();
+            while (!integral && INTEGRAL_OPERATORS.contains(op)) {
+                op = Factory.getRandomOperator();
+            }
+            parts.add(op);
+            if (Rng.get().nextDouble() < 0.5) {
+                parts.add(operand(s, integral));
+            } else {
+                // An operand integral on its own would bind to its neighbours
+                parts.add(expression(s, integral));
+            }
+        }
+        if (parenthesis) {
+            parts.add(")");
+        }
+        return new Node(Node.Kind.EXPRESSION, parts);
+    }
+
+    /**
+     * Build a random value or visible variable, as
+     * Factory.getRandomValueOrVariable()
+     */
+    private static String operand(Scope s, boolean integral) {
+        if (Rng.get().nextDouble() < 0.5) {
+            return value(integral);
+        }
+        if (Rng.get().nextDouble() < 0.1) {
+            List<String> vars = s.visible(integral, true, true);
+            if (!vars.isEmpty()) {
+                String var = vars.get(Rng.get().nextInt(vars.size()));
+                double rnd2 = Rng.get().nextDouble();
+                if (rnd2 < 0.25) {
+                    return "++" + var;
+                } else if (rnd2 < 0.5) {
+                    return "--" + var;
+                } else if (rnd2 < 0.75) {
+                    return var + "++";
+                } else {
+                    return var + "--";
+                }
+            }
+        }
+        List<String> vars = s.visible(integral, false, false);
+        if (vars.isEmpty()) {
+            return value(integral);
+        }
+        String not = Rng.get().nextDouble() < 0.1 ? "!" : "";
+        return not + vars.get(Rng.get().nextInt(vars.size()));
+    }
+
+    /**
+     * Build a random number, as Factory.getRandomValue(), but an integer or
+     * character where integral, and never negated twice, which C++ reads as
+     * decrementing a number
+     */
+    private static String value(boolean integral) {
+        String v = Factory.getRandomValue();
+        while ((integral && v.indexOf('.') >= 0) || v.startsWith("--")) {
+            v = Factory.getRandomValue();
+        }
+        return v;
+    }
+
+    /**
+     * Build a random control statement, as
+     * Factory.getRandomControlStatement()
+     *
+     * @param s the scope
+     * @return the tree
+     */
+    static Node control(Scope s) {
+        List<Object> parts = new ArrayList<>();
+        Node.Kind kind;
+
+        double rnd = Rng.get().nextDouble();
+        List<String> switchable = rnd >= 0.9 ? s.visible(true, false, false) : null;
+        Scope f = s.nested(false, false);
+        Node init = rnd >= 0.3 && rnd < 0.5 ? declaration(f, Collections.emptySet()) : null;
+        if (rnd >= 0.3 && rnd < 0.5 && init == null) {
+            // Every variable is visible, so loop with while instead
+            rnd = 0.6;
+        }
+        if (rnd < 0.3 || (switchable != null && switchable.isEmpty())) {
+            kind = Node.Kind.IF;
+            parts.add("if");
+            parts.add("(");
+            parts.add(expression(s, Rng.get().nextBoolean()));
+            parts.add(")");
+            parts.add(block(s.nested(false, false)));
+        } else if (rnd < 0.5) {
+            kind = Node.Kind.FOR;
+            f = f.declare(declared(init.flatten()));
+            parts.add("for");
+            parts.add("(");
+            parts.add(init);
+            parts.add(expression(f, Rng.get().nextBoolean()));
+            parts.add(";");
+            parts.add(expression(f, Rng.get().nextBoolean()));
+            parts.add(")");
+            parts.add(block(f.looping()));
+        } else if (rnd < 0.7) {
+            kind = Node.Kind.WHILE;
+            parts.add("while");
+            parts.add("(");
+            parts.add(expression(s, Rng.get().nextBoolean()));
+            parts.add(")");
+            parts.add(block(s.nested(true, true)));
+        } else if (rnd < 0.9) {
+            kind = Node.Kind.DO;
+            parts.add("do");
+            parts.add(block(s.nested(true, true)));
+            parts.add("while");
+            parts.add("(");
+            parts.add(expression(s, Rng.get().nextBoolean()));
+            parts.add(")");
+            parts.add(";");
+        } else {
+            kind = Node.Kind.SWITCH;
+            parts.add("switch");
+            parts.add("(");
+            parts.add(switchable.get(Rng.get().nextInt(switchable.size())));
+            parts.add(")");
+            parts.add("{");
+            Set<Integer> used = new HashSet<>();
+            int nCases = Rng.get().nextInt(Rng.get().nextInt(10) + 1);
+            for (int i = 0; i < nCases; i++) {
+                Node c = caseLabel(s, used);
+                used.add(label(c));
+                parts.add(c);
+            }
+            if (Rng.get().nextDouble() < 0.25) {
+                parts.add(defaultLabel(s));
+            }
+            parts.add("}");
+        }
+        return new Node(kind, parts);
+    }
+
+    /**
+     * Build a random case of a switch, with a label of its own
+     *
+     * @param s the scope of the switch
+     * @param used the labels of the other cases
+     * @return the tree
+     */
+    static Node caseLabel(Scope s, Set<Integer> used) {
+        // A negative label narrows if the variable is unsigned
+        String v = value(true);
+        while (used.contains(number(v)) || v.startsWith("-")) {
+            v = value(true);
+        }
+        List<Object> parts = new ArrayList<>();
+        parts.add("case");
+        parts.add(v);
+        parts.add(":");
+        parts.add(block(s.nested(false, true)));
+        if (Rng.get().nextDouble() < 0.5) {
+            parts.add("break;");
+        }
+        return new Node(Node.Kind.CASE, parts);
+    }
+
+    /**
+     * Build a random default case of a switch
+     *
+     * @param s the scope of the switch
+     * @return the tree
+     */
+    static Node defaultLabel(Scope s) {
+        List<Object> parts = new ArrayList<>();
+        parts.add("default");
+        parts.add(":");
+        parts.add(block(s.nested(false, true)));
+        return new Node(Node.Kind.DEFAULT, parts);
+    }
+
+    /**
+     * Build a random block, as Factory.getRandomBlock()
+     *
+     * @param level the scope of the block's own level
+     * @return the tree
+     */
+    static Node block(Scope level) {
+        List<Object> parts = new ArrayList<>();
+        int len = Rng.get().nextInt(Rng.get().nextInt(6) + 1) + 1;
+
+        parts.add("{");
+        for (int i = 0; i < len; i++) {
+            Node item = item(level, Collections.emptySet());
+            if (item.kind() == Node.Kind.DECLARATION) {
+                level = level.declare(declared(item.flatten()));
+            }
+            parts.add(item);
+        }
+        parts.add("}");
+        return new Node(Node.Kind.BLOCK, parts);
+    }
+
+    /**
+     * Build a random item of a block, as Factory.getRandomBlock()
+     *
+     * @param s the scope
+     * @param taken variables a declaration must not use
+     * @return the tree
+     */
+    static Node item(Scope s, Set<String> taken) {
+        double rnd = Rng.get().nextDouble();
+        Node d = rnd < 0.2 ? declaration(s, taken) : null;
+        if (d != null) {
+            return d;
+        } else if (rnd < 0.8) {
+            return expressionStatement(s);
+        } else if (rnd < 0.9) {
+            return branch(s);
+        } else {
+            return control(s);
+        }
+    }
+
+    /**
+     * Build a random expression followed by ';'
+     */
+    private static Node expressionStatement(Scope s) {
+        List<Object> parts = new ArrayList<>();
+        parts.add(expression(s, Rng.get().nextBoolean()));
+        parts.add(";");
+        return new Node(Node.Kind.EXPRESSION_STATEMENT, parts);
+    }
+
+    /**
+     * Build a random branch that may appear where the scope is
+     */
+    private static Node branch(Scope s) {
+        List<Object> parts = new ArrayList<>();
+        int options = s.loop ? 3 : s.breakable ? 2 : 1;
+        switch (Rng.get().nextInt(options)) {
+            case 1:
+                parts.add("break;");
+                break;
+            case 2:
+                parts.add("continue;");
+                break;
+            default:
+                // main() returns int
+                parts.add("return");
+                parts.add("0");
+                parts.add(";");
+                break;
+        }
+        return new Node(Node.Kind.BRANCH, parts);
+    }
+
+    /**
+     * Replace a random subtree with a new random one built for its place
+     *
+     * @param root the tree of a Statement
+     * @param s the scope of the Statement
+     * @param taken the variables the Statements around it declare at the
+     * same level
+     * @return the new tree, sharing the rest of the old one
+     */
+    static Node mutate(Node root, Scope s, Set<String> taken) {
+        List<Site> sites = new ArrayList<>();
+        sites(root, Node.Slot.STATEMENT, s, taken, false, false, null, sites);
+        int k = Rng.get().nextInt(sites.size());
+        return root.replace(k, random(sites.get(k)));
+    }
+
+    /**
+     * Replace a random subtree with a subtree of the donor that fits its
+     * place
+     *
+     * @param root the tree of a Statement
+     * @param s the scope of the Statement
+     * @param taken the variables the Statements around it declare at the
+     * same level
+     * @param donor the tree of another Statement
+     * @return the new tree, or null if no subtree of the donor fits the
+     * places tried
+     */
+    static Node crossover(Node root, Scope s, Set<String> taken, Node donor) {
+        List<Site> sites = new ArrayList<>();
+        sites(root, Node.Slot.STATEMENT, s, taken, false, false, null, sites);
+        List<Node> given = new ArrayList<>();
+        subtrees(donor, given);
+
+        for (int t = 0; t < CROSSOVER_TRIES; t++) {
+            int k = Rng.get().nextInt(sites.size());
+            Site site = sites.get(k);
+            List<Node> fits = new ArrayList<>();
+            for (Node n : given) {
+                if (site.slot.accepts(n.kind()) && fits(n, site)) {
+                    fits.add(n);
+                }
+            }
+            if (!fits.isEmpty()) {
+                return root.replace(k, fits.get(Rng.get().nextInt(fits.size())));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check a whole tree against the grammar and the scope
+     *
+     * @param root the tree of a Statement
+     * @param s the scope of the Statement
+     * @param taken the variables the Statements around it declare at the
+     * same level
+     * @return true if it would compile as far as the Grammar can tell
+     */
+    static boolean check(Node root, Scope s, Set<String> taken) {
+        Site site = new Site(null, Node.Slot.STATEMENT, s, taken, false, false, null);
+        return site.slot.accepts(root.kind()) && fits(root, site);
+    }
+
+    /**
+     * A place in a tree, and what may fill it
+     */
+    private static final class Site {
+
+        // What is there now
+        private final Node node;
+        private final Node.Slot slot;
+        private final Scope scope;
+        // Variables declared by the nodes around it at the same level
+        private final Set<String> taken;
+        // Whether an expression must have integral operands only, and
+        // whether it is an operand of another
+        private final boolean integral;
+        private final boolean operand;
+        // The labels of the other cases of the switch, for a case
+        private final Set<Integer> cases;
+
+        Site(Node node, Node.Slot slot, Scope scope, Set<String> taken, boolean integral, boolean operand,
+                Set<Integer> cases) {
+            this.node = node;
+            this.slot = slot;
+            this.scope = scope;
+            this.taken = taken;
+            this.integral = integral;
+            this.operand = operand;
+            this.cases = cases;
+        }
+    }
+
+    /**
+     * List the places of a subtree in preorder, the order of Node.replace()
+     */
+    private static void sites(Node n, Node.Slot slot, Scope s, Set<String> taken, boolean integral,
+            boolean operand, Set<Integer> cases, List<Site> out) {
+        out.add(new Site(n, slot, s, taken, integral, operand, cases));
+        Set<String> none = Collections.emptySet();
+        switch (n.kind()) {
+            case EXPRESSION:
+                boolean ints = integral || usesIntegralOperators(n);
+                for (int i = 0; i < n.parts(); i++) {
+                    if (n.part(i) instanceof Node) {
+                        sites((Node) n.part(i), Node.Slot.EXPRESSION, s, none, ints, true, null, out);
+                    }
+                }
+                break;
+            case FOR:
+                Scope f = s.nested(false, false);
+                Node init = (Node) n.part(2);
+                Node body = (Node) n.part(n.parts() - 1);
+                sites(init, Node.Slot.DECLARATION, f, declaredIn(body, null), false, false, null, out);
+                f = f.declare(declared(init.flatten()));
+                for (int i = 3; i < n.parts() - 1; i++) {
+                    if (n.part(i) instanceof Node) {
+                        sites((Node) n.part(i), Node.Slot.EXPRESSION, f, none, false, false, null, out);
+                    }
+                }
+                blockSites(body, f.looping(), out);
+                break;
+            case SWITCH:
+                List<Integer> labels = new ArrayList<>();
+                for (int i = 0; i < n.parts(); i++) {
+                    if (n.part(i) instanceof Node && ((Node) n.part(i)).kind() == Node.Kind.CASE) {
+                        labels.add(label((Node) n.part(i)));
+                    }
+                }
+                int c = 0;
+                for (int i = 0; i < n.parts(); i++) {
+                    if (n.part(i) instanceof Node) {
+                        Node child = (Node) n.part(i);
+                        if (child.kind() == Node.Kind.CASE) {
+                            Set<Integer> others = new HashSet<>(labels);
+                            others.remove(labels.get(c++));
+                            sites(child, Node.Slot.CASE, s, none, false, false, others, out);
+                        } else {
+                            sites(child, Node.Slot.DEFAULT, s, none, false, false, null, out);
+                        }
+                    }
+                }
+                break;
+            default:
+                // Expressions in the scope of the node, blocks a level in
+                for (int i = 0; i < n.parts(); i++) {
+                    if (n.part(i) instanceof Node) {
+                        Node child = (Node) n.part(i);
+                        if (child.kind() == Node.Kind.BLOCK) {
+                            blockSites(child, inner(n.kind(), s), out);
+                        } else {
+                            sites(child, Node.Slot.EXPRESSION, s, none, false, false, null, out);
+                        }
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * List the places of a block whose level has the given scope
+     */
+    private static void blockSites(Node block, Scope level, List<Site> out) {
+        out.add(new Site(block, Node.Slot.BLOCK, level, Collections.emptySet(), false, false, null));
+        for (int i = 0; i < block.parts(); i++) {
+            if (block.part(i) instanceof Node) {
+                Node item = (Node) block.part(i);
+                sites(item, Node.Slot.ITEM, level, declaredIn(block, item), false, false, null, out);
+                if (item.kind() == Node.Kind.DECLARATION) {
+                    level = level.declare(declared(item.flatten()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the scope of the level of a block inside a node
+     */
+    private static Scope inner(Node.Kind kind, Scope s) {
+        switch (kind) {
+            case WHILE:
+            case DO:
+                return s.nested(true, true);
+            case CASE:
+            case DEFAULT:
+                return s.nested(false, true);
+            default:
+                return s.nested(false, false);
+        }
+    }
+
+    /**
+     * List the variables the items of a block declare, but one
+     */
+    private static Set<String> declaredIn(Node block, Node except) {
+        Set<String> vars = new HashSet<>();
+        for (int i = 0; i < block.parts(); i++) {
+            Object part = block.part(i);
+            if (part instanceof Node && part != except && ((Node) part).kind() == Node.Kind.DECLARATION) {
+                vars.add(declared(((Node) part).flatten())[2]);
+            }
+        }
+        return vars;
+    }
+
+    /**
+     * List every subtree in preorder
+     */
+    private static void subtrees(Node n, List<Node> out) {
+        out.add(n);
+        for (int i = 0; i < n.parts(); i++) {
+            if (n.part(i) instanceof Node) {
+                subtrees((Node) n.part(i), out);
+            }
+        }
+    }
+
+    /**
+     * Build a new subtree for a place
+     */
+    private static Node random(Site site) {
+        Scope s = site.scope;
+        Node old = site.node;
+        if (old != null && old.kind() == Node.Kind.DECLARATION) {
+            // The code after it may use the variable, so keep it, and its type
+            String[] d = declared(old.flatten());
+            return declaration(s, d[0], d[1], d[2]);
+        }
+        switch (site.slot) {
+            case STATEMENT:
+                return statement(s, site.taken);
+            case ITEM:
+                return item(s, site.taken);
+            case EXPRESSION:
+                return expression(s, site.integral || (!site.operand && Rng.get().nextBoolean()));
+            case BLOCK:
+                return block(s);
+            case CASE:
+                return caseLabel(s, site.cases);
+            default:
+                return defaultLabel(s);
+        }
+    }
+
+    /**
+     * Check a subtree in place of what a site holds
+     */
+    private static boolean fits(Node n, Site site) {
+        Scope s = site.scope;
+        Node old = site.node;
+        if (old != null && old.kind() == Node.Kind.DECLARATION) {
+            // The code after it may use the variable
+            if (n.kind() != Node.Kind.DECLARATION || !Arrays.equals(declared(n.flatten()), declared(old.flatten()))) {
+                return false;
+            }
+        } else if (n.kind() == Node.Kind.DECLARATION) {
+            String var = declared(n.flatten())[2];
+            if (s.type(var) != null || site.taken.contains(var)) {
+                return false;
+            }
+        }
+        if (n.kind() == Node.Kind.CASE && site.cases != null && site.cases.contains(label(n))) {
+            return false;
+        }
+        if (site.operand && !site.integral && n.kind() == Node.Kind.EXPRESSION && !"(".equals(n.part(0))
+                && usesIntegralOperators(n)) {
+            // It would bind to the operands around it
+            return false;
+        }
+        return check(n, s, site.integral);
+    }
+
+    /**
+     * Check a subtree in a scope. Declarations are checked against the level
+     * by whoever declares them.
+     */
+    private static boolean check(Node n, Scope s, boolean integral) {
+        switch (n.kind()) {
+            case EXPRESSION: {
+                boolean ints = integral || usesIntegralOperators(n);
+                int first = "(".equals(n.part(0)) ? 1 : 0;
+                int last = first == 1 ? n.parts() - 1 : n.parts();
+                for (int i = first; i < last; i++) {
+                    Object part = n.part(i);
+                    if (part instanceof Node) {
+                        if (!check((Node) part, s, ints)) {
+                            return false;
+                        }
+                    } else if ((i - first) % 2 == 0 && !operand((String) part, s, ints)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            case DECLARATION: {
+                String[] d = declared(n.flatten());
+                if (d == null) {
+                    return false;
+                }
+                if (("signed".equals(d[0]) || "unsigned".equals(d[0])) && !SIGNABLE.contains(d[1])) {
+                    return false;
+                }
+                boolean initialized = false;
+                for (int i = 0; i < n.parts(); i++) {
+                    Object part = n.part(i);
+                    if ("=".equals(part)) {
+                        initialized = true;
+                    } else if (part instanceof Node) {
+                        if (!check((Node) part, s, false)) {
+                            return false;
+                        }
+                    } else if (i > 0 && ("?".equals(n.part(i - 1)) || ":".equals(n.part(i - 1)))
+                            && !operand((String) part, s, false)) {
+                        return false;
+                    }
+                }
+                // A static initialized at run time needs the C++ runtime,
+                // which gcc does not link
+                return initialized ? !"static".equals(d[0]) : !"const".equals(d[0]);
+            }
+            case ASSIGNMENT: {
+                String type = s.type((String) n.part(0));
+                return type != null && !type.startsWith("const ") && check((Node) n.part(2), s, false);
+            }
+            case EXPRESSION_STATEMENT:
+                return check((Node) n.part(0), s, false);
+            case BRANCH: {
+                Object b = n.part(0);
+                return "break;".equals(b) ? s.breakable : "continue;".equals(b) ? s.loop : "return".equals(b) && n.parts() == 3;
+            }
+            case FOR: {
+                Scope f = s.nested(false, false);
+                Node init = (Node) n.part(2);
+                if (!check(init, f, false)) {
+                    return false;
+                }
+                f = f.declare(declared(init.flatten()));
+                for (int i = 3; i < n.parts() - 1; i++) {
+                    if (n.part(i) instanceof Node && !check((Node) n.part(i), f, false)) {
+                        return false;
+                    }
+                }
+                return checkBlock((Node) n.part(n.parts() - 1), f.looping());
+            }
+            case SWITCH: {
+                String type = s.type((String) n.part(2));
+                if (type == null || !Scope.fits(type, true, false, false)) {
+                    return false;
+                }
+                Set<Integer> labels = new HashSet<>();
+                for (int i = 0; i < n.parts(); i++) {
+                    if (n.part(i) instanceof Node) {
+                        Node child = (Node) n.part(i);
+                        if (child.kind() == Node.Kind.CASE && !labels.add(label(child))) {
+                            return false;
+                        }
+                        if (!check(child, s, false)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            case CASE:
+                if (label(n) == null || label(n) < 0) {
+                    return false;
+                }
+                return checkBlock((Node) n.part(3), inner(n.kind(), s));
+            case BLOCK:
+                // Only ever checked in place of a block, whose site holds
+                // the scope of its level
+                return checkBlock(n, s);
+            default:
+                // if, while, do and default: expressions, then a block
+                for (int i = 0; i < n.parts(); i++) {
+                    if (n.part(i) instanceof Node) {
+                        Node child = (Node) n.part(i);
+                        boolean ok = child.kind() == Node.Kind.BLOCK
+                                ? checkBlock(child, inner(n.kind(), s)) : check(child, s, false);
+                        if (!ok) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+        }
+    }
+
+    /**
+     * Check a block whose level has the given scope
+     */
+    private static boolean checkBlock(Node block, Scope level) {
+        if (block.kind() != Node.Kind.BLOCK) {
+            return false;
+        }
+        for (int i = 0; i < block.parts(); i++) {
+            if (block.part(i) instanceof Node) {
+                Node item = (Node) block.part(i);
+                if (!Node.Slot.ITEM.accepts(item.kind()) || !check(item, level, false)) {
+                    return false;
+                }
+                if (item.kind() == Node.Kind.DECLARATION) {
+                    String[] d = declared(item.flatten());
+                    if (level.declaredHere(d[2])) {
+                        return false;
+                    }
+                    level = level.declare(d);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check an operand of an expression
+     */
+    private static boolean operand(String t, Scope s, boolean integral) {
+        if (t.isEmpty()) {
+            return false;
+        }
+        char c = t.charAt(0);
+        if (Character.isDigit(c) || c == '\'' || (c == '-' && t.length() > 1 && Character.isDigit(t.charAt(1)))) {
+            return !integral || t.indexOf('.') < 0;
+        }
+        boolean not = t.startsWith("!");
+        boolean step = t.startsWith("++") || t.startsWith("--") || t.endsWith("++") || t.endsWith("--");
+        String var = not ? t.substring(1) : step ? t.replace("++", "").replace("--", "") : t;
+        String type = s.type(var);
+        // !x is a bool whatever x is
+        return type != null && Scope.fits(type, integral && !not, step, step);
+    }
+
+    /**
+     * Check if an expression uses %, &amp; or |, itself or through operands
+     * without parentheses, which bind to its other operands
+     */
+    private static boolean usesIntegralOperators(Node expression) {
+        for (int i = 0; i < expression.parts(); i++) {
+            Object part = expression.part(i);
+            if (INTEGRAL_OPERATORS.contains(part)) {
+                return true;
+            }
+            if (part instanceof Node && !"(".equals(((Node) part).part(0)) && usesIntegralOperators((Node) part)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the value of the label of a case, or null if it is not integral
+     */
+    private static Integer label(Node c) {
+        return number((String) c.part(1));
+    }
+
+    /**
+     * Get the value of an integer or character literal, or null
+     */
+    private static Integer number(String v) {
+        if (v.length() == 3 && v.charAt(0) == '\'' && v.charAt(2) == '\'') {
+            return (int) v.charAt(1);
+        }
+        try {
+            return Integer.valueOf(v);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Read a declaration from the first tokens of a Statement, typed or not
+     */
+    private static String[] declared(Statement statement) {
+        List<String> first = new ArrayList<>(4);
+        for (int i = 0; i < 4 && i < statement.length(); i++) {
+            first.add(statement.getToken(i));
+        }
+        return declared(first);
+    }
+
+    /**
+     * Read a declaration from the first tokens of a Statement
+     *
+     * @param tokens the tokens
+     * @return the modifier or null, the type and the variable, or null if
+     * the tokens do not start with a declaration
+     */
+    static String[] declared(List<String> tokens) {
+        int i = 0;
+        String modifier = null;
+        if (!tokens.isEmpty() && MODIFIERS.contains(tokens.get(0))) {
+            modifier = tokens.get(0);
+            i = 1;
+        }
+        if (tokens.size() < i + 3 || !Arrays.asList("bool", "char", "double", "float", "int", "long", "short").contains(tokens.get(i))) {
+            return null;
+        }
+        String next = tokens.get(i + 2);
+        if (!next.equals(";") && !next.equals("=")) {
+            return null;
+        }
+        return new String[]{modifier, tokens.get(i), tokens.get(i + 1)};
+    }
+
+    /**
+     * Count the error words gcc reports for a Program, or -1 if it cannot
+     * be compiled
+     */
+    private static int errorWords(Program p) {
+        try {
+            return Compiler.compile(p.toString()).getErrorWords();
+        } catch (IOException | InterruptedException ex) {
+            Logger.getLogger(Grammar.class.getName()).log(Level.SEVERE, null, ex);
+            return -1;
+        }
+    }
+
+    /**
+     * Compare flat and typed Programs under Operator.mutate(): the same
+     * number of random Programs of each are mutated over and over, and
+     * compiled after every round. Fewer error words for the same number of
+     * compiles is the score gained for the evaluations spent.
+     *
+     * Usage: Grammar [programs [statements [rounds]]]
+     *
+     * @param args the number of Programs of each kind, 20 by default, their
+     * number of Statements, 5 by default, and the number of mutation rounds,
+     * 5 by default
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        for (boolean typed : new boolean[]{false, true}) {
+            Factory.TYPED = typed;
+            long words = 0;
+            long tokens = 0;
+            int clean = 0;
+            int compiles = 0;
+            for (int i = 0; i < n; i++) {
+                Program p = Factory.makeRandomProgram(k);
+                for (int round = 0; round < rounds; round++) {
+                    Operator.mutate(p);
+                    int w = errorWords(p);
+                    if (w >= 0) {
+                        compiles++;
+                        words += w;
+                        tokens += p.length();
+                        clean += w == 0 ? 1 : 0;
+                    }
+                }
+            }
+            System.out.println((typed ? "Typed" : "Flat ") + ": " + compiles + " compiles, "
+                    + String.format("%.2f", (double) words / Math.max(1, compiles)) + " error words per compile, "
+                    + String.format("%.3f", (double) words / Math.max(1, tokens)) + " per token, "
+                    + clean + " without errors");
+        }
+        System.exit(0);
+    }
+}
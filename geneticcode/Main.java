@@ -9,7 +9,12 @@
 package geneticcode;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The main() function runs the genetic algorithm.
@@ -31,6 +36,16 @@ public class Main {
      * n is size of population
      */
     public static int nMAX = 10;
+    /**
+     * Run the SteadyState engine for gMAX * nMAX evaluations instead of
+     * gMAX generations
+     */
+    public static boolean STEADY_STATE = false;
+    /**
+     * Make the initial population without structural duplicates, as far as
+     * Factory.makeRandomPrograms() manages
+     */
+    public static boolean UNIQUE = false;
 
     // Set a cutoff time in which progam terminates
     private static int TIME_CUTOFF_IN_SECONDS = 3600;
@@ -46,17 +61,34 @@ public class Main {
      * themselves.
      */
     private static void geneticAlgorithm(long startTime) {
-        ArrayList<Program> population = new ArrayList<>();
-        // Create the initial population
-        for (int n = 0; n < nMAX; n++) {
-            population.add(Factory.makeRandomProgram(kMAX));
+        ArrayList<Program> population;
+        if (Fitness.isAsyncExact()) {
+            // Create the initial population in parallel, and score each
+            // Program as soon as it is made
+            List<CompletableFuture<Program>> scoring = Collections.synchronizedList(new ArrayList<>());
+            population = Factory.makeRandomPrograms(nMAX, kMAX, UNIQUE, p -> scoring.add(Fitness.fitnessAsync(p)));
+            Fitness.fitness(population, scoring);
+        } else {
+            // Create the initial population in parallel
+            population = Factory.makeRandomPrograms(nMAX, kMAX, UNIQUE, null);
+
+            // Score the initial population
+            Fitness.fitness(population);
         }
 
-        // Score the initial population
-        Fitness.fitness(population);
+        // Breed and compile side by side, with the same number of evaluations
+        if (STEADY_STATE) {
+            population = SteadyState.evolve(population, (long) gMAX * nMAX, startTime + TIME_CUTOFF_IN_SECONDS * 1000L);
+
+            long timeElapsed = System.currentTimeMillis() - startTime;
+            if (timeElapsed / 1000 > TIME_CUTOFF_IN_SECONDS) {
+                System.err.println("You exceeded the cutoff time threshold of " + TIME_CUTOFF_IN_SECONDS + " seconds.");
+                System.exit(3);
+            }
+        }
 
         // For each generation...
-        for (int g = 1; g <= gMAX; g++) {
+        for (int g = 1; g <= gMAX && !STEADY_STATE; g++) {
             System.out.println("Generation " + g);
 
             // Round 1: Selection. Fight for survival.
@@ -70,6 +102,9 @@ public class Main {
             // Round 3: Mutation. Strive to be better. 
             population = Operator.mutate(population, g);
             // Post-condition: you have mutants in your population
+            if (PopulationIndex.isReported()) {
+                Operator.getIndex().report(g);
+            }
 
             // Terminate if population is too small or too big
             if (population.size() < nMAX) {
@@ -114,7 +149,7 @@ public class Main {
          * number of arguments
          */
         // Read in arguments, overwrite the above defaults
-        if (args.length == 3) {
+        if (args.length == 3 || args.length == 4) {
             try {
                 kMAX = Integer.parseInt(args[0]);
                 gMAX = Integer.parseInt(args[1]);
@@ -124,6 +159,26 @@ public class Main {
                 System.exit(1);
             }
         }
+        // An optional fourth argument picks the engine, the genome and the
+        // seed, e.g. "steady", "typed", "unique" or "steady,typed,seed=42"
+        if (args.length == 4) {
+            List<String> options = Arrays.asList(args[3].split(","));
+            STEADY_STATE = options.contains("steady");
+            Factory.TYPED = options.contains("typed");
+            UNIQUE = options.contains("unique");
+            for (String option : options) {
+                if (option.startsWith("seed=")) {
+                    try {
+                        Rng.seed(Long.parseLong(option.substring(5)));
+                    } catch (NumberFormatException e) {
+                        System.err.println("The seed must be an integer. We're done here. Good-day!");
+                        System.exit(1);
+                    }
+                }
+            }
+        }
+        // Pass it as seed= to replay the run
+        Logger.getLogger(Main.class.getName()).log(Level.INFO, "Random seed {0}", String.valueOf(Rng.getSeed()));
 
         // Run the Gentic Algorithm
         long startTime = System.currentTimeMillis();
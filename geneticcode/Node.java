@@ -0,0 +1,219 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node of the grammar tree of a Statement, built by the Grammar.
+ *
+ * A node holds its tokens and child nodes in the order they render, so
+ * flattening the tree gives the tokens of the Statement. Nodes never change:
+ * replacing a subtree builds new nodes along the path to it and shares the
+ * rest, so copies of a Statement can share their tree.
+ *
+ * Each node fills a slot that decides which kinds of node may take its
+ * place, so replacing subtrees keeps the tree grammatical. The Grammar also
+ * checks the variables and types of what takes its place.
+ *
+ */
+final class Node {
+
+    /**
+     * The productions of the Grammar
+     */
+    enum Kind {
+        DECLARATION,
+        ASSIGNMENT,
+        // An expression followed by ';'
+        EXPRESSION_STATEMENT,
+        // break; continue; or return;
+        BRANCH,
+        IF,
+        FOR,
+        WHILE,
+        DO,
+        SWITCH,
+        CASE,
+        DEFAULT,
+        BLOCK,
+        EXPRESSION
+    }
+
+    /**
+     * The places a node can fill, and the kinds of node each accepts
+     */
+    enum Slot {
+        // A whole Statement
+        STATEMENT,
+        // An item of a block
+        ITEM,
+        EXPRESSION,
+        // The first part of a for loop
+        DECLARATION,
+        BLOCK,
+        CASE,
+        DEFAULT;
+
+        /**
+         * Check if a kind of node may fill this slot
+         *
+         * @param kind the kind of node
+         * @return true if it fits
+         */
+        boolean accepts(Kind kind) {
+            switch (this) {
+                case STATEMENT:
+                    return kind == Kind.DECLARATION || kind == Kind.ASSIGNMENT || kind == Kind.EXPRESSION_STATEMENT
+                            || isControl(kind);
+                case ITEM:
+                    return kind == Kind.DECLARATION || kind == Kind.ASSIGNMENT || kind == Kind.EXPRESSION_STATEMENT
+                            || kind == Kind.BRANCH || isControl(kind);
+                case EXPRESSION:
+                    return kind == Kind.EXPRESSION;
+                case DECLARATION:
+                    return kind == Kind.DECLARATION;
+                case BLOCK:
+                    return kind == Kind.BLOCK;
+                case CASE:
+                    return kind == Kind.CASE;
+                default:
+                    return kind == Kind.DEFAULT;
+            }
+        }
+
+        private static boolean isControl(Kind kind) {
+            return kind == Kind.IF || kind == Kind.FOR || kind == Kind.WHILE || kind == Kind.DO || kind == Kind.SWITCH;
+        }
+    }
+
+    private final Kind kind;
+    // Tokens and child nodes, in the order they render
+    private final Object[] parts;
+    // Nodes in this subtree, and tokens when flattened
+    private final int size;
+    private final int length;
+
+    /**
+     * Construct a node
+     *
+     * @param kind the production
+     * @param parts the tokens and child nodes, in the order they render
+     */
+    Node(Kind kind, List<Object> parts) {
+        this(kind, parts.toArray());
+    }
+
+    private Node(Kind kind, Object[] parts) {
+        this.kind = kind;
+        this.parts = parts;
+        int n = 1;
+        int len = 0;
+        for (Object part : parts) {
+            if (part instanceof Node) {
+                n += ((Node) part).size;
+                len += ((Node) part).length;
+            } else {
+                len++;
+            }
+        }
+        size = n;
+        length = len;
+    }
+
+    /**
+     * Get the production of this node
+     *
+     * @return the kind
+     */
+    Kind kind() {
+        return kind;
+    }
+
+    /**
+     * Get the number of tokens and child nodes of this node
+     *
+     * @return the part count
+     */
+    int parts() {
+        return parts.length;
+    }
+
+    /**
+     * Get a token or child node of this node
+     *
+     * @param i the index of the part
+     * @return the token, as a String, or the child Node
+     */
+    Object part(int i) {
+        return parts[i];
+    }
+
+    /**
+     * Get the number of nodes in this subtree, this one included
+     *
+     * @return the node count
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of tokens of this subtree
+     *
+     * @return the token count
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Flatten the subtree to its tokens
+     *
+     * @return the tokens, in order
+     */
+    ArrayList<String> flatten() {
+        ArrayList<String> tokens = new ArrayList<>(length);
+        flatten(tokens);
+        return tokens;
+    }
+
+    private void flatten(List<String> tokens) {
+        for (Object part : parts) {
+            if (part instanceof Node) {
+                ((Node) part).flatten(tokens);
+            } else {
+                tokens.add((String) part);
+            }
+        }
+    }
+
+    /**
+     * Replace a node of the subtree, sharing the rest
+     *
+     * @param k the position of the node in preorder, 0 for this one
+     * @param with the new subtree
+     * @return the new subtree
+     */
+    Node replace(int k, Node with) {
+        if (k == 0) {
+            return with;
+        }
+        k--;
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i] instanceof Node) {
+                Node child = (Node) parts[i];
+                if (k < child.size) {
+                    Object[] copy = parts.clone();
+                    copy[i] = child.replace(k, with);
+                    return new Node(kind, copy);
+                }
+                k -= child.size;
+            }
+        }
+        throw new IndexOutOfBoundsException("Node: " + k + ", Size: " + size);
+    }
+}
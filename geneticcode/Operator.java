@@ -9,14 +9,15 @@
 package geneticcode;
 
 import java.util.ArrayList;
-import java.util.Random;
 
 /**
  * Static collection of Generic Operators and their helper functions.
  */
 public class Operator {
-    // Random seed 
-    private static final Random r = new Random();
+    // The generation the Operators last built, and its Statement counts,
+    // null until someone reads them
+    private static ArrayList<Program> latest = new ArrayList<>();
+    private static PopulationIndex index = null;
 
     /**
      * You can access any public static function, such as Main.gMAX *
@@ -27,14 +28,54 @@ public class Operator {
     private Operator() {
     }
 
+    /**
+     * Get the Statement counts of the generation the Operators last built,
+     * e.g. to find how widely a Statement is held before crossing it over.
+     * Built on the first call, and kept up to date by the Operators from
+     * then on, until the next selection.
+     *
+     * @return the index of the latest generation
+     */
+    public static PopulationIndex getIndex() {
+        if (index == null) {
+            index = new PopulationIndex(latest);
+        }
+        return index;
+    }
+
+    /**
+     * Start a new generation from a population, dropping the index of any
+     * other
+     */
+    private static void from(ArrayList<Program> population) {
+        if (population != latest) {
+            latest = population;
+            index = null;
+        }
+    }
+
+    /**
+     * Count a child in its parent's place, if the index is kept. The child
+     * may be the parent changed in place.
+     */
+    private static void replace(Program parent, Program child) {
+        if (index != null) {
+            if (child != parent) {
+                index.remove(parent);
+                index.add(child);
+            }
+            index.update(child);
+        }
+    }
+
     /**
      * Pick two Programs at random and select the one with the higher score
      * @param population the population to select from
      * @return the superior Program
      */
     public static Program tournamentSelection(ArrayList<Program> population){
-        int i = r.nextInt(population.size());
-        int j = r.nextInt(population.size());
+        int i = Rng.get().nextInt(population.size());
+        int j = Rng.get().nextInt(population.size());
         return population.get(i).getScore() > population.get(j).getScore() ? population.get(i) : population.get(j);
     }
     
@@ -51,9 +92,11 @@ public class Operator {
         ArrayList<Program> nextGeneration = new ArrayList<Program>();
 
         for (int i = 0; i < prevGeneration.size(); i++) {
-            nextGeneration.add(tournamentSelection(prevGeneration));
+            Program selected = tournamentSelection(prevGeneration);
+            nextGeneration.add(selected);
         }
 
+        from(nextGeneration);
         return nextGeneration;
     }
 
@@ -66,6 +109,7 @@ public class Operator {
      */
     public static ArrayList<Program> crossover(ArrayList<Program> population, int generation) {
         ArrayList<Program> children = new ArrayList<>();
+        from(population);
 
         /**
          * This crossover attempts to mate all (with itself). 
@@ -75,7 +119,11 @@ public class Operator {
             // Should you crossover all?
             Program child = crossover(program, program);
             children.add(child);
+            // The child takes the parent's place
+            replace(program, child);
         }
+        // The index, if kept, counts the children now
+        latest = children;
         return children;
     }
 
@@ -106,18 +154,22 @@ public class Operator {
      */
     public static ArrayList<Program> mutate(ArrayList<Program> population, int generation) {
         ArrayList<Program> mutants = new ArrayList<>();
+        from(population);
 
         for (Program program : population) {
 
             Program mutant = program; 
 
             // Mutate 3 of every 10 programs
-            if ((new Random()).nextInt(10) < 3) {
+            if (Rng.get().nextInt(10) < 3) {
                 mutant = mutate(program);
+                replace(program, mutant);
             }
 
             mutants.add(mutant);
         }
+        // The index, if kept, counts the mutants now
+        latest = mutants;
 
         return mutants;
     }
@@ -130,12 +182,17 @@ public class Operator {
      */
     public static Program mutate(Program program) {
 
-        program.addRandomStatements((new Random()).nextInt(20)); 
+        program.addRandomStatements(Rng.get().nextInt(20)); 
         // program.removeRandomStatement();
 
-        // duplicate statement in 20% of programs
-        if ((new Random()).nextInt(5) < 2)
-            program.duplicateRandomStatement(); 
+        // duplicate statement in 20% of programs, or for typed statements
+        // change a subtree, as a duplicate declaration would not compile
+        if (Rng.get().nextInt(5) < 2) {
+            if (Factory.TYPED)
+                program.mutateRandomSubtree();
+            else
+                program.duplicateRandomStatement(); 
+        }
 
         return program;
     }
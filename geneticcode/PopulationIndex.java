@@ -0,0 +1,363 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts the Statements across a population, keyed by their structural hash.
+ *
+ * For each distinct Statement it keeps the number of copies in the
+ * population, the number of Programs holding it and the Programs themselves,
+ * so the frequency of a Statement and the number of unique Statements are
+ * lookups. The entropy of the Statement counts is kept as they change, so the
+ * diversity of a generation costs nothing to report either.
+ *
+ * The same Program may fill several places in a population, and each place
+ * counts. The hashes of a Program's Statements are kept from when it was
+ * added, so a Program changed in place since can still be taken out; call
+ * update() after changing it to count its new Statements instead. update()
+ * costs nothing if the Program's structural hash did not change.
+ *
+ * Each distinct Statement keeps a copy of the token ids of the first one
+ * counted, for hottest(), and nothing of the Statements themselves.
+ *
+ * Not thread safe.
+ *
+ */
+public class PopulationIndex {
+
+    // The Statements of each Program when it was last counted
+    private final IdentityHashMap<Program, Held> programs = new IdentityHashMap<>();
+    // Statement hash to its counts
+    private final HashMap<Long, Entry> entries = new HashMap<>();
+
+    // Places in the population, and Statements across them
+    private int size = 0;
+    private long total = 0;
+    // Sum of n * ln(n) over the copies n of each distinct Statement
+    private double nLogN = 0;
+
+    /**
+     * Construct an empty index
+     */
+    public PopulationIndex() {
+    }
+
+    /**
+     * Construct an index of a population
+     *
+     * @param population the Programs
+     */
+    public PopulationIndex(List<Program> population) {
+        for (Program p : population) {
+            add(p);
+        }
+    }
+
+    /**
+     * Count a Program taking a place in the population
+     *
+     * @param program the Program
+     */
+    public void add(Program program) {
+        Held held = programs.get(program);
+        if (held == null) {
+            held = new Held(program);
+            programs.put(program, held);
+        }
+        held.places++;
+        size++;
+        count(program, held, 1);
+    }
+
+    /**
+     * Check if report() logs anything, so an index need not be built just to
+     * be reported
+     *
+     * @return true if reports are logged
+     */
+    public static boolean isReported() {
+        return Logger.getLogger(PopulationIndex.class.getName()).isLoggable(Level.FINE);
+    }
+
+    /**
+     * Take a Program out of one of its places in the population, as it was
+     * when it was last counted
+     *
+     * @param program the Program
+     * @return false if the Program was not in the population
+     */
+    public boolean remove(Program program) {
+        Held held = programs.get(program);
+        if (held == null) {
+            return false;
+        }
+        count(program, held, -1);
+        size--;
+        if (--held.places == 0) {
+            programs.remove(program);
+        }
+        return true;
+    }
+
+    /**
+     * Count a Program again after it was changed in place
+     *
+     * @param program the Program
+     */
+    public void update(Program program) {
+        Held held = programs.get(program);
+        if (held == null || held.hash == program.structuralHash()) {
+            return;
+        }
+        count(program, held, -held.places);
+        Held fresh = new Held(program);
+        fresh.places = held.places;
+        programs.put(program, fresh);
+        count(program, fresh, fresh.places);
+    }
+
+    /**
+     * Check if a Program is in the population
+     *
+     * @param program the Program
+     * @return true if it fills at least one place
+     */
+    public boolean contains(Program program) {
+        return programs.containsKey(program);
+    }
+
+    /**
+     * Get the number of copies of a Statement across the population
+     *
+     * @param statement the Statement
+     * @return the number of copies
+     */
+    public int count(Statement statement) {
+        Entry e = entries.get(statement.structuralHash());
+        return e == null ? 0 : e.copies;
+    }
+
+    /**
+     * Get the number of places in the population holding a Statement
+     *
+     * @param statement the Statement
+     * @return the number of Programs holding it, counting each place
+     */
+    public int programs(Statement statement) {
+        Entry e = entries.get(statement.structuralHash());
+        return e == null ? 0 : e.places;
+    }
+
+    /**
+     * Get the share of the population holding a Statement
+     *
+     * @param statement the Statement
+     * @return the frequency, between 0 and 1
+     */
+    public double frequency(Statement statement) {
+        return size == 0 ? 0 : (double) programs(statement) / size;
+    }
+
+    /**
+     * Get the Programs holding a Statement
+     *
+     * @param statement the Statement
+     * @return the Programs, each once
+     */
+    public List<Program> holders(Statement statement) {
+        Entry e = entries.get(statement.structuralHash());
+        return e == null ? new ArrayList<>() : new ArrayList<>(e.holders.keySet());
+    }
+
+    /**
+     * Get the number of places in the population
+     *
+     * @return the population size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of Statements across the population
+     *
+     * @return the Statement count
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Get the number of distinct Statements across the population
+     *
+     * @return the unique Statement count
+     */
+    public int unique() {
+        return entries.size();
+    }
+
+    /**
+     * Get the Shannon entropy of the Statements across the population, in
+     * bits. 0 if every Statement is the same, log2(total) if all differ.
+     *
+     * @return the entropy
+     */
+    public double entropy() {
+        if (total == 0) {
+            return 0;
+        }
+        // H = ln(N) - sum(n ln n) / N
+        double h = Math.log(total) - nLogN / total;
+        return Math.max(0, h) / Math.log(2);
+    }
+
+    /**
+     * Get the share of the Statements across the population that are
+     * distinct
+     *
+     * @return the diversity, between 0 and 1
+     */
+    public double diversity() {
+        return total == 0 ? 0 : (double) entries.size() / total;
+    }
+
+    /**
+     * Get the Statements held by the most places in the population
+     *
+     * @param k the number of Statements
+     * @return a copy of each, most widely held first
+     */
+    public List<Statement> hottest(int k) {
+        List<Entry> all = new ArrayList<>(entries.values());
+        all.sort((a, b) -> b.places != a.places ? Integer.compare(b.places, a.places) : Integer.compare(b.copies, a.copies));
+        List<Statement> hot = new ArrayList<>();
+        for (Entry e : all.subList(0, Math.min(k, all.size()))) {
+            hot.add(new Statement(new TokenList(e.sample.clone(), e.sample.length)));
+        }
+        return hot;
+    }
+
+    /**
+     * Log the diversity of the population
+     *
+     * @param generation the generation number
+     */
+    public void report(int generation) {
+        Logger logger = Logger.getLogger(PopulationIndex.class.getName());
+        if (!logger.isLoggable(Level.FINE)) {
+            return;
+        }
+        logger.log(Level.FINE, "Generation {0}: {1} unique of {2} statements, entropy {3} bits",
+                new Object[]{generation, unique(), total, String.format("%.2f", entropy())});
+        for (Statement s : hottest(3)) {
+            logger.log(Level.FINER, "Held by {0}%: {1}",
+                    new Object[]{String.format("%.0f", 100 * frequency(s)), s});
+        }
+    }
+
+    /**
+     * Add or take out the Statements of some places of a Program
+     *
+     * @param places the number of places, negative to take them out
+     */
+    private void count(Program program, Held held, int places) {
+        long[] hashes = held.hashes;
+        int i = 0;
+        while (i < hashes.length) {
+            long hash = hashes[i];
+            int n = 1;
+            while (i + n < hashes.length && hashes[i + n] == hash) {
+                n++;
+            }
+            Entry e = entries.get(hash);
+            if (e == null) {
+                e = new Entry(sample(program, hash));
+                entries.put(hash, e);
+            }
+            nLogN -= nLogN(e.copies);
+            e.copies += places * n;
+            e.places += places;
+            nLogN += nLogN(e.copies);
+            e.holders.merge(program, places, (a, b) -> a + b == 0 ? null : a + b);
+            if (e.copies == 0) {
+                entries.remove(hash);
+            }
+            i += n;
+        }
+        total += (long) places * hashes.length;
+        if (entries.isEmpty()) {
+            // Nothing left, so drop the rounding error too
+            nLogN = 0;
+        }
+    }
+
+    /**
+     * Copy the token ids of a Statement of a Program, found by its hash. Only
+     * a Program counted just now is asked, so it still holds the Statement.
+     */
+    private static int[] sample(Program program, long hash) {
+        for (Statement s : program.list()) {
+            if (s.structuralHash() == hash) {
+                return s.list().ids(0, s.length());
+            }
+        }
+        return new int[0];
+    }
+
+    /**
+     * Compute n * ln(n), 0 for 0
+     */
+    private static double nLogN(int n) {
+        return n == 0 ? 0 : n * Math.log(n);
+    }
+
+    /**
+     * The Statements of a Program when it was counted, and the number of
+     * places it fills
+     */
+    private static class Held {
+
+        // The hashes of the Statements, sorted so copies are adjacent
+        private final long[] hashes;
+        // The structural hash of the Program
+        private final long hash;
+        private int places = 0;
+
+        Held(Program program) {
+            List<Statement> list = program.list();
+            hashes = new long[list.size()];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = list.get(i).structuralHash();
+            }
+            Arrays.sort(hashes);
+            hash = program.structuralHash();
+        }
+    }
+
+    /**
+     * The counts of one distinct Statement
+     */
+    private static class Entry {
+
+        // The token ids of a Statement with this hash
+        private final int[] sample;
+        private int copies = 0;
+        private int places = 0;
+        // The places each Program holding the Statement fills
+        private final IdentityHashMap<Program, Integer> holders = new IdentityHashMap<>();
+
+        Entry(int[] sample) {
+            this.sample = sample;
+        }
+    }
+}
@@ -9,22 +9,36 @@
  */
 package geneticcode;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Objects;
-import java.util.Random;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.random.RandomGenerator;
 
 /**
  * This class represent a Program in the C language. It is represented as a list
  * of Statements, which are each a list of Strings.
  *
+ * Copying a Program is cheap: the copy shares the list of Statements until
+ * either Program changes it, or hands out its Statements, which copies the
+ * list first. Copied Statements share their tokens the same way.
+ *
+ * Many changes at once are cheapest as one Edit, see edit(), which lays the
+ * Statements out again in one pass instead of shifting them for each change.
+ *
  */
 public class Program implements Comparable<Program> {
 
     /**
-     * Statements are stored in a list
+     * Statements are stored in a list, which keeps running totals and may be
+     * shared with copies, see own()
      */
-    private ArrayList<Statement> statements;
+    private StatementList statements;
     /**
      * Each program tracks its fitness score, initially 0
      */
@@ -33,6 +47,10 @@ public class Program implements Comparable<Program> {
      * Each program tracks its last error output from compilation
      */
     private String stdError = "not compiled yet";
+    /**
+     * Whether the score was predicted by the Surrogate rather than compiled
+     */
+    private boolean surrogate = false;
 
     /**
      * Track a probability to select Mutation
@@ -49,7 +67,7 @@ public class Program implements Comparable<Program> {
      * @param statements the list of statements
      */
     public Program(ArrayList<Statement> statements) {
-        this.statements = deepCopy(statements);
+        this.statements = new StatementList(deepCopy(statements));
     }
 
     /**
@@ -58,12 +76,28 @@ public class Program implements Comparable<Program> {
      * @param program the Program to copy
      */
     public Program(Program program) {
-        statements = new ArrayList<>();
-        for (Statement s : program.getStatements()) {
-            statements.add(new Statement(s));
-        }
+        // Shared until either Program changes it
+        statements = program.statements.share();
         score = program.getScore();
         stdError = program.getStdError();
+        surrogate = program.isSurrogate();
+    }
+
+    /**
+     * Make sure no other Program shares the list of Statements, before
+     * changing it
+     */
+    private void own() {
+        statements = statements.unshare();
+    }
+
+    /**
+     * Make sure no other Program shares the list of Statements, before
+     * handing out Statements that could be changed from outside
+     */
+    private void expose() {
+        own();
+        statements.expose();
     }
 
     /**
@@ -113,7 +147,7 @@ public class Program implements Comparable<Program> {
      *
      */
     public void setRandomProbabilityMutation() {
-        this.probabilityMutation = (new Random()).nextDouble();
+        this.probabilityMutation = Rng.get().nextDouble();
     }    
 
     /**
@@ -139,7 +173,7 @@ public class Program implements Comparable<Program> {
      *
      */
     public void setRandomProbabilityCrossover() {
-        this.probabilityCrossover = (new Random()).nextDouble();
+        this.probabilityCrossover = Rng.get().nextDouble();
     }        
     
     /**
@@ -148,7 +182,7 @@ public class Program implements Comparable<Program> {
      * @return true if should mutate
      */
     public boolean mutate() {
-        return (new Random()).nextDouble() <= probabilityMutation;
+        return Rng.get().nextDouble() <= probabilityMutation;
     }
 
     /**
@@ -157,7 +191,7 @@ public class Program implements Comparable<Program> {
      * @return true if should crossover
      */
     public boolean crossover() {
-        return (new Random()).nextDouble() <= probabilityCrossover;
+        return Rng.get().nextDouble() <= probabilityCrossover;
     }
 
     /**
@@ -166,6 +200,7 @@ public class Program implements Comparable<Program> {
      * @param statement the new Statement to add
      */
     public void addStatement(Statement statement) {
+        own();
         statements.add(new Statement(statement));
     }
 
@@ -176,6 +211,7 @@ public class Program implements Comparable<Program> {
      * @param statement the new Statement to add
      */
     public void addStatement(int index, Statement statement) {
+        own();
         if (index >= 0 && index < statements.size()) {
             statements.add(index, new Statement(statement));
         } else {
@@ -189,6 +225,7 @@ public class Program implements Comparable<Program> {
      * @param toAdd the list of Statements to add
      */
     public void addStatements(ArrayList<Statement> toAdd) {
+        own();
         statements.addAll(deepCopy(toAdd));
     }
 
@@ -199,6 +236,7 @@ public class Program implements Comparable<Program> {
      * @param toAdd the list of Statements to add
      */
     public void addStatements(int index, ArrayList<Statement> toAdd) {
+        own();
         if (index >= 0 && index < statements.size()) {
             statements.addAll(index, deepCopy(toAdd));
         } else {
@@ -206,11 +244,23 @@ public class Program implements Comparable<Program> {
         }
     }
 
+    /**
+     * Begin a batch of changes to the Program, applied together by
+     * Edit.apply()
+     *
+     * @return the empty batch
+     */
+    public Edit edit() {
+        own();
+        return new Edit();
+    }
+
     /**
      * Add a random Statement to the Program
      */
     public void addRandomStatement() {
-        statements.add(((new Random()).nextInt(statements.size())), Factory.getRandomStatement());
+        own();
+        statements.add((Rng.get().nextInt(statements.size())), Factory.getRandomStatement());
     }
 
     /**
@@ -219,9 +269,15 @@ public class Program implements Comparable<Program> {
      * @param n the number of random Statements to add
      */
     public void addRandomStatements(int n) {
+        RandomGenerator r = Rng.get();
+        Edit batch = edit();
+        // Typed Statements use the variables declared before their gap
+        Set<String> taken = Factory.TYPED ? Grammar.declared(statements, -1) : null;
         for (int i = 0; i < n; i++) {
-            addRandomStatement();
+            int gap = r.nextInt(statements.size());
+            batch.insert(gap, Factory.TYPED ? Grammar.statement(statements, gap, taken) : Factory.getRandomStatement());
         }
+        batch.apply();
     }
 
     /**
@@ -231,6 +287,7 @@ public class Program implements Comparable<Program> {
      * @return the Statement if in range, otherwise null
      */
     public Statement getStatement(int index) {
+        expose();
         index = Math.min(index, statements.size() - 1);
         index = Math.max(index, 0);
         return statements.get(index);
@@ -242,9 +299,20 @@ public class Program implements Comparable<Program> {
      * @return the list of statements
      */
     public ArrayList<Statement> getStatements() {
+        expose();
         return statements;
     }
     
+    /**
+     * Get the list of Statements with its running totals, which may be shared
+     * with copies of this Program, so it must only be read
+     *
+     * @return the list of statements
+     */
+    StatementList list() {
+        return statements;
+    }
+
     /**
      * Get a deep copy of the list of Statements in the Program
      *
@@ -262,6 +330,7 @@ public class Program implements Comparable<Program> {
      * @return a list of the Statements if in range, otherwise empty list
      */
     public ArrayList<Statement> getStatements(int low, int high) {
+        expose();
         low = Math.min(low, statements.size() - 1);
         low = Math.max(low, 0);
         high = Math.min(high, statements.size());
@@ -278,7 +347,8 @@ public class Program implements Comparable<Program> {
      * @return a random Statement
      */
     public Statement getRandomStatement() {
-        return statements.get(((new Random()).nextInt(statements.size())));
+        expose();
+        return statements.get((Rng.get().nextInt(statements.size())));
     }
 
     /**
@@ -288,8 +358,9 @@ public class Program implements Comparable<Program> {
      * @return random subset of Statements
      */
     public ArrayList<Statement> getRandomStatements() {
+        expose();
         ArrayList<Statement> subset = new ArrayList<>();
-        Random r = new Random();
+        RandomGenerator r = Rng.get();
         int n = r.nextInt(statements.size());
         int index = r.nextInt(statements.size() - n);
         for (int i = index; i < Math.min(n, statements.size()); i++) {
@@ -305,11 +376,12 @@ public class Program implements Comparable<Program> {
      * @return list of tokens
      */
     public ArrayList<Statement> getRandomSubset(double probability) {
+        expose();
         ArrayList<Statement> list = new ArrayList<>();
         probability = Math.min(probability, 1);
         probability = Math.max(probability, 0);
         for (Statement s : statements) {
-            double rnd = (new Random()).nextDouble();
+            double rnd = Rng.get().nextDouble();
             if (rnd < probability) {
                 list.add(s);
             }
@@ -324,13 +396,7 @@ public class Program implements Comparable<Program> {
      * @return list of Statements containing token
      */
     public ArrayList<Statement> getStatementsContainingToken(String target) {
-        ArrayList<Statement> list = new ArrayList<>();
-        for (Statement s : statements) {
-            if (s.contains(target)) {
-                list.add(new Statement(s));
-            }
-        }
-        return list;
+        return copies(statements.containing(target.trim()));
     }
 
     /**
@@ -340,15 +406,7 @@ public class Program implements Comparable<Program> {
      * @return list of Statements containing at least one of the target tokens
      */
     public ArrayList<Statement> getStatementsContainingAnyToken(ArrayList<String> targets) {
-        ArrayList<Statement> list = new ArrayList<>();
-        for (Statement s : statements) {
-            for (String target : targets) {
-                if (s.contains(target)) {
-                    list.add(new Statement(s));
-                }
-            }
-        }
-        return list;
+        return copies(statements.containingAny(trim(targets)));
     }
 
     /**
@@ -358,34 +416,51 @@ public class Program implements Comparable<Program> {
      * @return list of Statements containing all of the target tokens
      */
     public ArrayList<Statement> getStatementsContainingAllTokens(ArrayList<String> targets) {
-        ArrayList<Statement> list = new ArrayList<>();
-        for (Statement s : statements) {
-            boolean add = true;
-            for (String target : targets) {
-                add &= s.contains(target);
-            }
-            if (add) {
-                list.add(new Statement(s));
-            }
+        return copies(statements.containingAll(trim(targets)));
+    }
+
+    /**
+     * Copy the Statements at the given positions, in order
+     *
+     * @param positions the positions
+     * @return copies of the Statements
+     */
+    private ArrayList<Statement> copies(BitSet positions) {
+        ArrayList<Statement> list = new ArrayList<>(positions.cardinality());
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            list.add(new Statement(statements.get(i)));
         }
         return list;
     }
 
+    /**
+     * Trim the target tokens, as Statement.contains does
+     *
+     * @param targets the tokens
+     * @return the trimmed tokens
+     */
+    private static List<String> trim(List<String> targets) {
+        List<String> trimmed = new ArrayList<>(targets.size());
+        for (String t : targets) {
+            trimmed.add(t.trim());
+        }
+        return trimmed;
+    }
+
     /**
      * Get the longest Statement in the Program
      *
      * @return the longest Statement
      */
     public Statement getLongestStatement() {
-        int longest = -1;
-        Statement longestStatement = null;
+        expose();
+        int longest = statements.getLongest();
         for (Statement s : statements) {
-            if (s.length() > longest) {
-                longest = s.length();
-                longestStatement = s;
+            if (s.length() == longest) {
+                return s;
             }
         }
-        return longestStatement;
+        return null;
     }
 
     /**
@@ -394,15 +469,14 @@ public class Program implements Comparable<Program> {
      * @return the longest Statement
      */
     public Statement getShortestStatement() {
-        int shortest = Integer.MAX_VALUE;
-        Statement shortestStatement = null;
+        expose();
+        int shortest = statements.getShortest();
         for (Statement s : statements) {
-            if (s.length() < shortest) {
-                shortest = s.length();
-                shortestStatement = s;
+            if (s.length() == shortest) {
+                return s;
             }
         }
-        return shortestStatement;
+        return null;
     }
 
     /**
@@ -411,14 +485,15 @@ public class Program implements Comparable<Program> {
      * @return random index in the Statement list
      */
     public int getRandomIndex() {
-        return ((new Random()).nextInt(statements.size()) - 1);
+        return (Rng.get().nextInt(statements.size()) - 1);
     }
 
     /**
      * Remove a random Statement from the Program
      */
     public void removeRandomStatement() {
-        statements.remove(((new Random()).nextInt(statements.size())));
+        own();
+        statements.remove((Rng.get().nextInt(statements.size())));
     }
 
     /**
@@ -441,6 +516,7 @@ public class Program implements Comparable<Program> {
      * @return true, if Program contained the Statement
      */
     public boolean remove(Statement toRemove) {
+        own();
         return statements.remove(toRemove);
     }
 
@@ -450,6 +526,7 @@ public class Program implements Comparable<Program> {
      * @param index the index to remove
      */
     public void removeStatement(int index) {
+        own();
         if (index >= 0 && index < statements.size()) {
             statements.remove(index);
         }
@@ -462,11 +539,25 @@ public class Program implements Comparable<Program> {
      * @param toRemove list of Statements to remove
      */
     public void removeStatements(ArrayList<Statement> toRemove) {
+        // Each one in the list takes out the first equal Statement left
+        HashMap<Statement, Integer> pending = new HashMap<>();
         for (Statement r : toRemove) {
-            if (statements.contains(r)) {
-                statements.remove(r);
+            pending.merge(r, 1, Integer::sum);
+        }
+        Edit batch = edit();
+        for (int i = 0; i < statements.size() && !pending.isEmpty(); i++) {
+            Statement s = statements.get(i);
+            Integer k = pending.get(s);
+            if (k != null) {
+                batch.delete(i);
+                if (k == 1) {
+                    pending.remove(s);
+                } else {
+                    pending.put(s, k - 1);
+                }
             }
         }
+        batch.apply();
     }
 
     /**
@@ -476,19 +567,19 @@ public class Program implements Comparable<Program> {
      * @param high the upper index, exclusive
      */
     public void removeStatements(int low, int high) {
+        own();
         low = Math.min(low, statements.size() - 1);
         low = Math.max(low, 0);
         high = Math.min(high, statements.size());
         high = Math.max(high, 0);
-        for (int index = low; index < high; index++) {
-            statements.remove(index);
-        }
+        edit().delete(low, high).apply();
     }
 
     /**
      * Removes the first Statement
      */
     public void removeFirstStatement() {
+        own();
         statements.remove(0);
     }
 
@@ -496,6 +587,7 @@ public class Program implements Comparable<Program> {
      * Removes the last Statement
      */
     public void removeLastStatement() {
+        own();
         statements.remove(statements.size() - 1);
     }
 
@@ -503,8 +595,9 @@ public class Program implements Comparable<Program> {
      * Replace a random Statement with a new random Statement
      */
     public void replaceRandomStatement() {
-        Statement rndStatement = getRandomStatement();
-        int index = (new Random()).nextInt(statements.size());
+        own();
+        Statement rndStatement = statements.get((Rng.get().nextInt(statements.size())));
+        int index = Rng.get().nextInt(statements.size());
         statements.set(index, rndStatement);
     }
 
@@ -526,7 +619,8 @@ public class Program implements Comparable<Program> {
      * @param index the index of the Statement to replace
      */
     public void replaceRandomStatement(int index) {
-        Statement rndStatement = getRandomStatement();
+        own();
+        Statement rndStatement = statements.get((Rng.get().nextInt(statements.size())));
         statements.set(index, rndStatement);
     }
 
@@ -536,7 +630,8 @@ public class Program implements Comparable<Program> {
      * @param statement the Statement to replace, if present
      */
     public void replaceRandomStatement(Statement statement) {
-        Statement rndStatement = getRandomStatement();
+        own();
+        Statement rndStatement = statements.get((Rng.get().nextInt(statements.size())));
         int index = statements.indexOf(statement);
         if (index > 0 && index < statements.size() - 1) {
             statements.set(index, rndStatement);
@@ -550,17 +645,45 @@ public class Program implements Comparable<Program> {
      * @param statement2 the new Statement that replaces statement1
      */
     public void replaceStatement(Statement statement1, Statement statement2) {
+        own();
         int index = statements.indexOf(statement1);
         if (index > 0 && index < statements.size() - 1) {
             statements.set(index, statement2);
         }
     }
 
+    /**
+     * Mutate a random subtree of a random Statement, if it is typed
+     *
+     * @return false if the Statement picked is not typed
+     */
+    public boolean mutateRandomSubtree() {
+        own();
+        int i = Rng.get().nextInt(statements.size());
+        return statements.get(i).mutateSubtree(Grammar.Scope.before(statements, i), Grammar.declared(statements, i));
+    }
+
+    /**
+     * Replace a random subtree of a random Statement with a fitting subtree
+     * of a random Statement of the donor, if both are typed
+     *
+     * @param donor the Program to take the subtree from, left as it was
+     * @return false if nothing was changed
+     */
+    public boolean crossoverRandomSubtree(Program donor) {
+        Statement from = donor.statements.get(Rng.get().nextInt(donor.statements.size()));
+        own();
+        int i = Rng.get().nextInt(statements.size());
+        return statements.get(i).crossoverSubtree(from, Grammar.Scope.before(statements, i),
+                Grammar.declared(statements, i));
+    }
+
     /**
      * Pick a random Statement and duplicate in in the program
      */
     public void duplicateRandomStatement() {
-        int index = (new Random()).nextInt(statements.size());
+        own();
+        int index = Rng.get().nextInt(statements.size());
         if (index < statements.size() - 1) {
             statements.add(index + 1, new Statement(statements.get(index)));
         } else {
@@ -583,8 +706,9 @@ public class Program implements Comparable<Program> {
      * Swaps two Statements, at random
      */
     public void swapStatements() {
-        int i = (new Random()).nextInt(statements.size());
-        int j = (new Random()).nextInt(statements.size());
+        own();
+        int i = Rng.get().nextInt(statements.size());
+        int j = Rng.get().nextInt(statements.size());
         Collections.swap(statements, i, j);
     }
 
@@ -595,6 +719,7 @@ public class Program implements Comparable<Program> {
      * @param second the index of a second element
      */
     public void swapStatements(int first, int second) {
+        own();
         first = Math.min(first, statements.size() - 1);
         first = Math.max(first, 0);
         second = Math.min(second, statements.size() - 1);
@@ -602,6 +727,17 @@ public class Program implements Comparable<Program> {
         Collections.swap(statements, first, second);
     }
 
+    /**
+     * Checks if parentheses, brackets, and braces are balanced across the
+     * whole Program, so a bracket may open in one Statement and close in a
+     * later one. Folded from the summaries the Statements keep.
+     *
+     * @return true if balanced, false otherwise
+     */
+    public boolean balanced() {
+        return statements.brackets().isBalanced();
+    }
+
     /**
      * Checks if Statement list is empty
      *
@@ -618,12 +754,7 @@ public class Program implements Comparable<Program> {
      * @return true if found
      */
     public boolean containsStatement(Statement target) {
-        for (Statement s : statements) {
-            if (s.toString().equals(target.toString())) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(target) >= 0;
     }
 
     /**
@@ -633,12 +764,7 @@ public class Program implements Comparable<Program> {
      * @return true if found
      */
     public boolean containsToken(String target) {
-        for (Statement s : statements) {
-            if (s.contains(target)) {
-                return true;
-            }
-        }
-        return false;
+        return statements.count(target.trim()) > 0;
     }
 
     /**
@@ -648,12 +774,8 @@ public class Program implements Comparable<Program> {
      * @return the index of the first occurrence if found, -1 otherwise
      */
     public int indexOf(Statement target) {
-        for (int i = 0; i < statements.size(); i++) {
-            if (statements.get(i).toString().equals(target.toString())) {
-                return i;
-            }
-        }
-        return -1;
+        // Statement.equals compares the structural hashes first
+        return statements.indexOf(target);
     }
 
     /**
@@ -664,12 +786,7 @@ public class Program implements Comparable<Program> {
      * @return the index of the first occurrence if found, -1 otherwise
      */
     public int indexOf(String target) {
-        for (int i = 0; i < statements.size(); i++) {
-            if (statements.get(i).contains(target)) {
-                return i;
-            }
-        }
-        return -1;
+        return statements.containing(target.trim()).nextSetBit(0);
     }
 
     /**
@@ -678,7 +795,9 @@ public class Program implements Comparable<Program> {
      * @param other the Program to append to this Program
      */
     public void append(Program other) {
-        for (Statement s : other.getStatements()) {
+        own();
+        // A snapshot, in case other is this Program
+        for (Statement s : new ArrayList<>(other.statements)) {
             statements.add(new Statement(s));
         }
     }
@@ -689,7 +808,8 @@ public class Program implements Comparable<Program> {
      * @param other the Program to prepend on this Program
      */
     public void prepend(Program other) {
-        ArrayList<Statement> temp = deepCopy(other.getStatements());
+        own();
+        ArrayList<Statement> temp = deepCopy(other.statements);
         Collections.reverse(temp);
         for (Statement s : temp) {
             statements.add(0, new Statement(s));
@@ -704,18 +824,20 @@ public class Program implements Comparable<Program> {
      * @param other the Program to splice into this Program
      */
     public void splice(int index, Program other) {
+        own();
         if (index > statements.size()) {
-            statements.addAll(deepCopy(other.getStatements()));
+            statements.addAll(deepCopy(other.statements));
             return;
         }
         index = Math.max(index, 0);
-        statements.addAll(index, deepCopy(other.getStatements()));
+        statements.addAll(index, deepCopy(other.statements));
     }
 
     /**
      * Reverse the order of the Statements
      */
     public void reverse() {
+        own();
         Collections.reverse(statements);
     }
 
@@ -723,7 +845,8 @@ public class Program implements Comparable<Program> {
      * Shuffle the order of the Statements
      */
     public void shuffle() {
-        Collections.shuffle(statements);
+        own();
+        Rng.shuffle(statements);
     }
 
     /**
@@ -732,13 +855,15 @@ public class Program implements Comparable<Program> {
      * the list will not change.
      */
     public void rotate() {
-        Collections.rotate(statements, (new Random()).nextInt(statements.size()));
+        own();
+        Collections.rotate(statements, Rng.get().nextInt(statements.size()));
     }
 
     /**
      * Sort the list of Statements by length
      */
     public void sort() {
+        own();
         Collections.sort(statements);
     }
 
@@ -754,13 +879,13 @@ public class Program implements Comparable<Program> {
         ArrayList<Statement> list = new ArrayList<>();
         int max = Math.min(p1.size(), p2.size());
         for (int k = 0; k < max; k++) {
-            list.add(new Statement(p1.getStatement(k)));
-            list.add(new Statement(p2.getStatement(k)));
+            list.add(new Statement(p1.statements.get(k)));
+            list.add(new Statement(p2.statements.get(k)));
         }
         if (max < p1.size()) {
-            list.addAll(deepCopy(p1.getStatements(max, p1.size() - 1)));
+            list.addAll(deepCopy(new ArrayList<>(p1.statements.subList(max, p1.size() - 1))));
         } else if (max < p2.size()) {
-            list.addAll(deepCopy(p2.getStatements(max, p2.size() - 1)));
+            list.addAll(deepCopy(new ArrayList<>(p2.statements.subList(max, p2.size() - 1))));
         }
         return new Program(list);
     }
@@ -776,12 +901,12 @@ public class Program implements Comparable<Program> {
         ArrayList<Statement> list1 = new ArrayList<>();
         ArrayList<Statement> list2 = new ArrayList<>();
 
-        int split = (new Random()).nextInt(program.size());
+        int split = Rng.get().nextInt(program.size());
         for (int i = 0; i < split; i++) {
-            list1.add(new Statement(program.getStatement(i)));
+            list1.add(new Statement(program.statements.get(i)));
         }
         for (int j = split; j < program.size(); j++) {
-            list2.add(new Statement(program.getStatement(j)));
+            list2.add(new Statement(program.statements.get(j)));
         }
         programs.add(new Program(list1));
         programs.add(new Program(list2));
@@ -820,11 +945,7 @@ public class Program implements Comparable<Program> {
      * @return length as a count of the words in the Program
      */
     public int length() {
-        int len = 0;
-        for (Statement s : statements) {
-            len += s.length();
-        }
-        return len;
+        return statements.getTokenCount();
     }
 
     /**
@@ -833,29 +954,26 @@ public class Program implements Comparable<Program> {
      * @return the average Statement length
      */
     public double averageStatementLength() {
-        double sum = 0.0;
-        for (Statement s : statements) {
-            sum += s.length();
-        }
+        double sum = statements.getTokenCount();
         return sum / statements.size();
     }
 
     /**
      * Get the length of the longest Statement in the Program
      *
-     * @return the length of the longest Statement
+     * @return the length of the longest Statement, 0 if there are none
      */
     public int longestStatementLength() {
-        return getLongestStatement().length();
+        return statements.getLongest();
     }
 
     /**
      * Get the length of the shortest Statement in the Program
      *
-     * @return the length of the shortest Statement
+     * @return the length of the shortest Statement, 0 if there are none
      */
     public int shortestStatementLength() {
-        return getShortestStatement().length();
+        return statements.getShortest();
     }
 
     /**
@@ -864,11 +982,7 @@ public class Program implements Comparable<Program> {
      * @return the character count
      */
     public int characterCount() {
-        int count = 0;
-        for (Statement statement : statements) {
-            count += statement.characterCount();
-        }
-        return count;
+        return statements.getCharacterCount();
     }
 
     /**
@@ -878,11 +992,7 @@ public class Program implements Comparable<Program> {
      * @return the count of the occurrence, otherwise 0
      */
     public int count(String target) {
-        int count = 0;
-        for (int i = 0; i < statements.size(); i++) {
-            count += statements.get(i).count(target);
-        }
-        return count;
+        return statements.count(target.trim());
     }
 
     /**
@@ -994,6 +1104,24 @@ public class Program implements Comparable<Program> {
         this.stdError = stdError;
     }
 
+    /**
+     * Check if the score was predicted rather than compiled
+     *
+     * @return true if the Surrogate scored this Program
+     */
+    public boolean isSurrogate() {
+        return surrogate;
+    }
+
+    /**
+     * Mark whether the score was predicted rather than compiled
+     *
+     * @param surrogate true if the Surrogate scored this Program
+     */
+    public void setSurrogate(boolean surrogate) {
+        this.surrogate = surrogate;
+    }
+
     /**
      * Count the words in the standard error message
      *
@@ -1010,28 +1138,44 @@ public class Program implements Comparable<Program> {
      */
     @Override
     public String toString() {
-        String str = "int main(){\n";
-        for (Statement s : statements) {
-            str += "   " + s + "\n";
-        }
-        str += "}";
-        return str;
+        // Kept until a Statement changes
+        return statements.render();
+    }
+
+    /**
+     * Write the program as a main() method, one Statement at a time, so a
+     * large program is never built as one String. Wrap an OutputStream in an
+     * OutputStreamWriter to write bytes.
+     *
+     * @param out where to write the program
+     * @throws IOException if the Writer fails
+     */
+    public void writeTo(Writer out) throws IOException {
+        statements.writeTo(out);
     }
 
     /**
-     * Produces a hashCode representation of this Program
+     * Get the 64-bit structural hash of this Program, folded from the hashes
+     * its Statements keep up to date. It depends only on the Statements, not
+     * on the score or anything else the Program carries, and equal Programs
+     * have equal hashes in any run.
      *
-     * @return the hashCode
+     * @return the structural hash
+     */
+    public long structuralHash() {
+        return statements.hash64();
+    }
+
+    /**
+     * Produces a hashCode representation of this Program. Like equals, it
+     * only depends on the Statements, so it changes when they do.
+     *
+     * @return the hashCode, from the structural hash
      */
     @Override
     public int hashCode() {
-        int hash = 5;
-        hash = 73 * hash + Objects.hashCode(this.statements);
-        hash = 73 * hash + (int) (Double.doubleToLongBits(this.score) ^ (Double.doubleToLongBits(this.score) >>> 32));
-        hash = 73 * hash + Objects.hashCode(this.stdError);
-        hash = 73 * hash + (int) (Double.doubleToLongBits(this.probabilityMutation) ^ (Double.doubleToLongBits(this.probabilityMutation) >>> 32));
-        hash = 73 * hash + (int) (Double.doubleToLongBits(this.probabilityCrossover) ^ (Double.doubleToLongBits(this.probabilityCrossover) >>> 32));
-        return hash;
+        long hash = structuralHash();
+        return (int) (hash ^ (hash >>> 32));
     }
 
     /**
@@ -1039,7 +1183,7 @@ public class Program implements Comparable<Program> {
      * same object, or if they are different but contain the same Statements
      *
      * @param obj the other Program to compare
-     * @return true, if equal by memory or toString()
+     * @return true, if equal by memory or by hash and Statements
      */
     @Override
     public boolean equals(Object obj) {
@@ -1050,10 +1194,8 @@ public class Program implements Comparable<Program> {
             return false;
         }
 
-        String str1 = this.toString();
-        String str2 = ((Program) obj).toString();
-
-        return str1.equals(str2);
+        Program other = (Program) obj;
+        return structuralHash() == other.structuralHash() && statements.equals(other.statements);
     }
 
     /**
@@ -1068,4 +1210,166 @@ public class Program implements Comparable<Program> {
         // This makes lists of Programs sortable by score
         return new Double(score).compareTo(other.getScore());
     }
+
+    /**
+     * A batch of changes to a Program, applied in one pass.
+     *
+     * Positions are those of the Program when the batch began, and do not
+     * move as the batch grows. Swaps and replacements change what the
+     * positions hold, in the order they are made. Deleted positions are then
+     * dropped, and inserted Statements go before the position given, in the
+     * order they were inserted. Out of range positions are ignored, except
+     * for inserts, which then go at the end, like addStatement(index, s).
+     *
+     * The Program must not be changed otherwise until the batch is applied.
+     */
+    public class Edit {
+
+        private final int size;
+        private boolean applied = false;
+        // What each position holds, once a swap or replacement needs it
+        private Statement[] slots;
+        private final BitSet deleted = new BitSet();
+        // Inserted Statements, and the positions they go before
+        private final ArrayList<Statement> inserted = new ArrayList<>();
+        private int[] gaps = new int[8];
+
+        private Edit() {
+            size = statements.size();
+        }
+
+        /**
+         * Insert a copy of a Statement before a position
+         *
+         * @param index the position, or the size to add at the end
+         * @param statement the Statement
+         * @return this batch
+         */
+        public Edit insert(int index, Statement statement) {
+            if (index < 0 || index > size) {
+                index = size;
+            }
+            int n = inserted.size();
+            if (n == gaps.length) {
+                gaps = Arrays.copyOf(gaps, n * 2);
+            }
+            gaps[n] = index;
+            inserted.add(new Statement(statement));
+            return this;
+        }
+
+        /**
+         * Delete the Statement at a position
+         *
+         * @param index the position
+         * @return this batch
+         */
+        public Edit delete(int index) {
+            if (index >= 0 && index < size) {
+                deleted.set(index);
+            }
+            return this;
+        }
+
+        /**
+         * Delete the Statements in a range of positions
+         *
+         * @param low the lower position, inclusive
+         * @param high the upper position, exclusive
+         * @return this batch
+         */
+        public Edit delete(int low, int high) {
+            low = Math.max(low, 0);
+            high = Math.min(high, size);
+            if (low < high) {
+                deleted.set(low, high);
+            }
+            return this;
+        }
+
+        /**
+         * Replace the Statement at a position with a copy of another
+         *
+         * @param index the position
+         * @param statement the new Statement
+         * @return this batch
+         */
+        public Edit replace(int index, Statement statement) {
+            if (index >= 0 && index < size) {
+                slots()[index] = new Statement(statement);
+            }
+            return this;
+        }
+
+        /**
+         * Swap the Statements at two positions
+         *
+         * @param first one position
+         * @param second another position
+         * @return this batch
+         */
+        public Edit swap(int first, int second) {
+            if (first >= 0 && first < size && second >= 0 && second < size) {
+                Statement[] s = slots();
+                Statement t = s[first];
+                s[first] = s[second];
+                s[second] = t;
+            }
+            return this;
+        }
+
+        /**
+         * Apply the changes to the Program. A batch can only be applied once.
+         */
+        public void apply() {
+            if (applied) {
+                throw new IllegalStateException("Edit already applied");
+            }
+            if (statements.size() != size) {
+                throw new IllegalStateException("Program changed since the edit began");
+            }
+            applied = true;
+            int n = inserted.size();
+            if (slots == null && n == 0 && deleted.isEmpty()) {
+                return;
+            }
+            own();
+
+            // Sort the inserts by position, keeping their order
+            int[] starts = new int[size + 2];
+            for (int i = 0; i < n; i++) {
+                starts[gaps[i] + 1]++;
+            }
+            for (int p = 0; p <= size; p++) {
+                starts[p + 1] += starts[p];
+            }
+            Statement[] sorted = new Statement[n];
+            int[] next = starts.clone();
+            for (int i = 0; i < n; i++) {
+                sorted[next[gaps[i]]++] = inserted.get(i);
+            }
+
+            ArrayList<Statement> order = new ArrayList<>(size - deleted.cardinality() + n);
+            for (int p = 0; p <= size; p++) {
+                for (int k = starts[p]; k < starts[p + 1]; k++) {
+                    order.add(sorted[k]);
+                }
+                if (p < size && !deleted.get(p)) {
+                    order.add(slots != null ? slots[p] : statements.get(p));
+                }
+            }
+            statements.compact(order);
+        }
+
+        /**
+         * Get what each position holds, taking it from the Program the
+         * first time
+         */
+        private Statement[] slots() {
+            if (slots == null) {
+                slots = statements.toArray(new Statement[size]);
+            }
+            return slots;
+        }
+    }
 }
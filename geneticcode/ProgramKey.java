@@ -0,0 +1,123 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A content address for a rendered Program: the first 128 bits of the SHA-256
+ * of its text. Two Programs with the same key compile identically.
+ *
+ */
+public final class ProgramKey {
+
+    // MessageDigest is not thread safe, so keep one per thread
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private final long high;
+    private final long low;
+
+    /**
+     * Construct a key from its two halves
+     *
+     * @param high the upper 64 bits
+     * @param low the lower 64 bits
+     */
+    ProgramKey(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Make the key for the given program text
+     *
+     * @param text the rendered Program
+     * @return the key
+     */
+    public static ProgramKey of(String text) {
+        byte[] digest = sha256.get().digest(text.getBytes(StandardCharsets.UTF_8));
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (digest[i] & 0xff);
+            low = (low << 8) | (digest[i + 8] & 0xff);
+        }
+        return new ProgramKey(high, low);
+    }
+
+    /**
+     * Make the key for the given Program
+     *
+     * @param program the Program
+     * @return the key
+     */
+    public static ProgramKey of(Program program) {
+        return of(program.toString());
+    }
+
+    /**
+     * Get the upper 64 bits
+     *
+     * @return the upper half of the key
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * Get the lower 64 bits
+     *
+     * @return the lower half of the key
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Produces a hashCode representation of this key
+     *
+     * @return the hashCode
+     */
+    @Override
+    public int hashCode() {
+        return (int) (low ^ (low >>> 32));
+    }
+
+    /**
+     * Compares the given key to this key
+     *
+     * @param obj the other key
+     * @return true if both halves match
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ProgramKey)) {
+            return false;
+        }
+        ProgramKey other = (ProgramKey) obj;
+        return high == other.high && low == other.low;
+    }
+
+    /**
+     * Creates a hex String representation of the key
+     *
+     * @return the key as 32 hex digits
+     */
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGenerator.SplittableGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * The random numbers of a run, drawn from one seed.
+ *
+ * Every thread draws from a generator of its own, split from a root seeded
+ * once per run, so threads never contend for a shared seed as they do with
+ * java.util.Random, and a run can be replayed from its seed. The thread that
+ * seeds the run gets the first split, and other threads get the next ones
+ * as they first draw, so a run is replayed exactly if the threads draw in
+ * the same order, as the main thread alone does.
+ *
+ * A task that should draw the same numbers whichever thread runs it takes a
+ * generator from fork() and use()s it while it runs.
+ *
+ */
+public class Rng {
+
+    /**
+     * The algorithm of the generators, a small and fast splittable one
+     */
+    public static final String ALGORITHM = "L64X128MixRandom";
+
+    private static final RandomGeneratorFactory<RandomGenerator> factory = RandomGeneratorFactory.of(ALGORITHM);
+
+    private static long seed;
+    private static SplittableGenerator root;
+    // Bumped by every seed, so threads drop the splits of the last one
+    private static volatile int epoch = 0;
+
+    private static final ThreadLocal<Local> local = ThreadLocal.withInitial(Local::new);
+
+    static {
+        seed(System.nanoTime() ^ Thread.currentThread().getId());
+    }
+
+    // Dummy constructor to prevent object instances
+    private Rng() {
+    }
+
+    /**
+     * Seed the run, which restarts the generators of every thread
+     *
+     * @param seed the seed
+     */
+    public static synchronized void seed(long seed) {
+        Rng.seed = seed;
+        root = (SplittableGenerator) factory.create(seed);
+        epoch++;
+        Local l = local.get();
+        l.generator = root.split();
+        l.epoch = epoch;
+    }
+
+    /**
+     * Get the seed of the run
+     *
+     * @return the seed
+     */
+    public static synchronized long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the generator of the current thread
+     *
+     * @return the generator
+     */
+    public static RandomGenerator get() {
+        Local l = local.get();
+        if (l.epoch != epoch) {
+            split(l);
+        }
+        return l.generator;
+    }
+
+    /**
+     * Make the current thread draw from another generator, such as one
+     * from fork() or a seeded one to replay some draws
+     *
+     * @param generator the generator
+     * @return the generator the thread drew from until now, to put back
+     */
+    public static RandomGenerator use(RandomGenerator generator) {
+        RandomGenerator last = get();
+        local.get().generator = generator;
+        return last;
+    }
+
+    /**
+     * Split a new generator from the current thread's, so it is the same in
+     * every replay if the thread's draws are
+     *
+     * @return the new generator
+     */
+    public static SplittableGenerator fork() {
+        RandomGenerator g = get();
+        if (g instanceof SplittableGenerator) {
+            return ((SplittableGenerator) g).split();
+        }
+        // An injected generator that cannot split seeds a new one
+        return (SplittableGenerator) factory.create(g.nextLong());
+    }
+
+    /**
+     * Make a generator of its own from a seed, which the run's seed does not
+     * change
+     *
+     * @param seed the seed
+     * @return the generator
+     */
+    public static RandomGenerator seeded(long seed) {
+        return factory.create(seed);
+    }
+
+    /**
+     * Shuffle a list with the current thread's generator, as
+     * Collections.shuffle() does with a Random
+     *
+     * @param list the list
+     */
+    public static void shuffle(List<?> list) {
+        RandomGenerator r = get();
+        for (int i = list.size(); i > 1; i--) {
+            Collections.swap(list, i - 1, r.nextInt(i));
+        }
+    }
+
+    /**
+     * Give a thread a generator split from the root
+     */
+    private static synchronized void split(Local l) {
+        l.generator = root.split();
+        l.epoch = epoch;
+    }
+
+    /**
+     * The generator of a thread, and the seed it was split for
+     */
+    private static class Local {
+
+        private RandomGenerator generator;
+        private int epoch = -1;
+    }
+}
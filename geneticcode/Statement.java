@@ -9,24 +9,43 @@
  */
 package geneticcode;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Objects;
-import java.util.Random;
-import java.util.Stack;
+import java.util.Set;
+import java.util.random.RandomGenerator;
 
 /**
  * This class represent a statement in the C language. It is represented as a
- * list of strings.
+ * list of tokens, each stored as its id in the global Symbols table, so tokens
+ * are copied, compared and searched as ints. The String-based methods intern
+ * or look up their arguments.
+ *
+ * A typed Statement also keeps the grammar tree its tokens were flattened
+ * from, and can be mutated and crossed over by subtree without leaving the
+ * grammar, see the Grammar. Changing its tokens directly makes it a plain
+ * Statement again, unless they end up the same.
  *
  */
 public class Statement implements Comparable<Statement> {
 
     /**
-     * Each statement is a list of strings
+     * Each statement is a list of token ids, which keeps its own counts
+     */
+    private TokenList tokens;
+
+    /**
+     * The grammar tree of a typed Statement, or null, and the structural hash
+     * of the tokens flattened from it, to tell if they were changed since
      */
-    private ArrayList<String> tokens;
+    private Node tree;
+    private long treeHash;
+
+    /**
+     * The list getTokens() returns, made on the first call
+     */
+    private TokenView view;
 
     /**
      * Constructor to make a new Statement
@@ -34,7 +53,16 @@ public class Statement implements Comparable<Statement> {
      * @param tokens list of Strings in Statement
      */
     public Statement(ArrayList<String> tokens) {
-        this.tokens = deepCopy(tokens);
+        this.tokens = new TokenList(tokens);
+    }
+
+    /**
+     * Constructor to make a new Statement holding a list of tokens
+     *
+     * @param tokens the tokens, which the Statement takes over
+     */
+    Statement(TokenList tokens) {
+        this.tokens = tokens;
     }
 
     /**
@@ -43,8 +71,22 @@ public class Statement implements Comparable<Statement> {
      * @param statement the Statement to copy
      */
     public Statement(Statement statement) {
-        // Strings are immutable, so this is same as deep copy
-        tokens = new ArrayList<>(statement.getTokens());
+        // Ids stand for immutable Strings, so this is same as deep copy
+        tokens = new TokenList(statement.tokens);
+        // Trees never change, so they can be shared
+        tree = statement.tree;
+        treeHash = statement.treeHash;
+    }
+
+    /**
+     * Constructor to make a typed Statement from a grammar tree
+     *
+     * @param tree the tree
+     */
+    Statement(Node tree) {
+        this(tree.flatten());
+        this.tree = tree;
+        treeHash = tokens.hash64();
     }
 
     /**
@@ -77,7 +119,7 @@ public class Statement implements Comparable<Statement> {
      * @param token the token to add
      */
     public void addToken(String token) {
-        tokens.add(token);
+        tokens.add(Symbols.id(token));
     }
 
     /**
@@ -89,7 +131,7 @@ public class Statement implements Comparable<Statement> {
     public void addToken(int index, String token) {
         index = Math.min(index, tokens.size());
         index = Math.max(index, 0);
-        tokens.add(index, token);
+        tokens.add(index, Symbols.id(token));
     }
 
     /**
@@ -98,7 +140,7 @@ public class Statement implements Comparable<Statement> {
      * @param tokens the tokens to add
      */
     public void addTokens(ArrayList<String> tokens) {
-        this.tokens.addAll(tokens);
+        this.tokens.addAll(this.tokens.size(), intern(tokens));
     }
 
     /**
@@ -110,18 +152,32 @@ public class Statement implements Comparable<Statement> {
     public void addTokens(int index, ArrayList<String> tokens) {
         if (index >= this.tokens.size()) {
             // add to end
-            this.tokens.addAll(tokens);
+            this.tokens.addAll(this.tokens.size(), intern(tokens));
 
         }
         index = Math.max(index, 0);
-        this.tokens.addAll(index, tokens);
+        this.tokens.addAll(index, intern(tokens));
+    }
+
+    /**
+     * Look up the ids of a list of tokens, adding new tokens to the table
+     *
+     * @param tokens the tokens
+     * @return their ids
+     */
+    private static int[] intern(ArrayList<String> tokens) {
+        int[] ids = new int[tokens.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Symbols.id(tokens.get(i));
+        }
+        return ids;
     }
 
     /**
      * Add a random token somewhere in the Statement
      */
     public void addRandomToken() {
-        tokens.add(((new Random()).nextInt(tokens.size())), Factory.getRandomToken());
+        tokens.add((Rng.get().nextInt(tokens.size())), Symbols.id(Factory.getRandomToken()));
     }
 
     /**
@@ -160,10 +216,11 @@ public class Statement implements Comparable<Statement> {
         low = Math.max(low, 0);
         high = Math.min(high, tokens.size());
         high = Math.max(high, 0);
-        if (low >= high) {
-            return new ArrayList<>();
+        ArrayList<String> list = new ArrayList<>();
+        for (int i = low; i < high; i++) {
+            list.add(tokens.get(i));
         }
-        return new ArrayList<>(tokens.subList(low, high));
+        return list;
     }
 
     /**
@@ -173,8 +230,8 @@ public class Statement implements Comparable<Statement> {
      */
     public ArrayList<String> getRandomTokens() {
         ArrayList<String> list = new ArrayList<>();
-        int i = (new Random()).nextInt(tokens.size());
-        int j = (new Random()).nextInt(tokens.size());
+        int i = Rng.get().nextInt(tokens.size());
+        int j = Rng.get().nextInt(tokens.size());
         int min = Math.min(i, j);
         int max = Math.max(i, j);
         for (int k = min; k < max; k++) {
@@ -189,7 +246,7 @@ public class Statement implements Comparable<Statement> {
      * @return a random token
      */
     public String getRandomToken() {
-        return tokens.get((new Random()).nextInt(tokens.size()));
+        return tokens.get(Rng.get().nextInt(tokens.size()));
     }
 
     /**
@@ -218,7 +275,7 @@ public class Statement implements Comparable<Statement> {
         probability = Math.min(probability, 1);
         probability = Math.max(probability, 0);
         for (String t : tokens) {
-            double rnd = (new Random()).nextDouble();
+            double rnd = Rng.get().nextDouble();
             if (rnd < probability) {
                 list.add(t);
             }
@@ -227,11 +284,24 @@ public class Statement implements Comparable<Statement> {
     }
 
     /**
-     * Get the list of tokens
+     * Get the list of tokens. The list reads and writes the Statement's own
+     * tokens, so changing it changes the Statement.
      *
      * @return the list of tokens
      */
     public ArrayList<String> getTokens() {
+        if (view == null) {
+            view = new TokenView(this);
+        }
+        return view;
+    }
+
+    /**
+     * Get the list of tokens, for the Program's running totals
+     *
+     * @return the list of tokens
+     */
+    TokenList list() {
         return tokens;
     }
 
@@ -241,7 +311,7 @@ public class Statement implements Comparable<Statement> {
      * @return the list of tokens
      */
     public ArrayList<String> getTokensCopy() {
-        return deepCopy(tokens);
+        return tokens.toList();
     }
 
     /**
@@ -250,14 +320,14 @@ public class Statement implements Comparable<Statement> {
      * @return random index in the token list
      */
     public int getRandomIndex() {
-        return ((new Random()).nextInt(tokens.size()) - 1);
+        return (Rng.get().nextInt(tokens.size()) - 1);
     }
 
     /**
      * Remove a random token from the Statement
      */
     public void removeRandomToken() {
-        tokens.remove(((new Random()).nextInt(tokens.size())));
+        tokens.remove((Rng.get().nextInt(tokens.size())));
     }
 
     /**
@@ -313,7 +383,10 @@ public class Statement implements Comparable<Statement> {
      */
     public void removeTokens(ArrayList<String> tokens) {
         for (String token : tokens) {
-            this.tokens.remove(token);
+            int index = this.tokens.indexOf(Symbols.find(token));
+            if (index >= 0) {
+                this.tokens.remove(index);
+            }
         }
     }
 
@@ -324,11 +397,9 @@ public class Statement implements Comparable<Statement> {
      * @param token2 the new token
      */
     public void replaceOnce(String token1, String token2) {
-        for (int i = 0; i < tokens.size(); i++) {
-            if (token1.equals(tokens.get(i))) {
-                tokens.set(i, token2);
-                return;
-            }
+        int index = tokens.indexOf(Symbols.find(token1));
+        if (index >= 0) {
+            tokens.set(index, Symbols.id(token2));
         }
     }
 
@@ -339,20 +410,121 @@ public class Statement implements Comparable<Statement> {
      * @param token2 the new token
      */
     public void replaceAll(String token1, String token2) {
+        int id1 = Symbols.find(token1);
+        if (id1 < 0) {
+            // No Statement holds it
+            return;
+        }
+        int id2 = Symbols.id(token2);
         for (int i = 0; i < tokens.size(); i++) {
-            if (token1.equals(tokens.get(i))) {
-                tokens.set(i, token2);
+            if (tokens.id(i) == id1) {
+                tokens.set(i, id2);
             }
         }
     }
 
     /**
-     * Update the list of tokens
+     * Update the list of tokens. The tokens are copied, so later changes to
+     * the given list do not affect the Statement.
      *
      * @param tokens the new ArrayList of tokens
      */
     public void setTokens(ArrayList<String> tokens) {
-        this.tokens = tokens;
+        TokenList list = new TokenList(tokens);
+        this.tokens.handOver(list);
+        this.tokens = list;
+    }
+
+    /**
+     * Check if this Statement still has its grammar tree
+     *
+     * @return true if typed
+     */
+    public boolean isTyped() {
+        return tree() != null;
+    }
+
+    /**
+     * Replace a random subtree of a typed Statement with a new random one
+     * that fits the same place in the grammar
+     *
+     * @return false if the Statement is not typed, and was left as it was
+     */
+    public boolean mutateSubtree() {
+        return mutateSubtree(Grammar.Scope.TOP, Collections.emptySet());
+    }
+
+    /**
+     * Replace a random subtree of a typed Statement with a new random one
+     * that fits the same place, using the variables of the Program around it
+     *
+     * @param scope the variables visible to the Statement
+     * @param taken the variables other Statements declare
+     * @return false if the Statement is not typed
+     */
+    boolean mutateSubtree(Grammar.Scope scope, Set<String> taken) {
+        Node root = tree();
+        if (root == null) {
+            return false;
+        }
+        setTree(Grammar.mutate(root, scope, taken));
+        return true;
+    }
+
+    /**
+     * Replace a random subtree of a typed Statement with a subtree of another
+     * typed Statement that fits the same place in the grammar
+     *
+     * @param donor the Statement to take the subtree from, left as it was
+     * @return false if either Statement is not typed or nothing fitted, and
+     * this Statement was left as it was
+     */
+    public boolean crossoverSubtree(Statement donor) {
+        return crossoverSubtree(donor, Grammar.Scope.TOP, Collections.emptySet());
+    }
+
+    /**
+     * Replace a random subtree of a typed Statement with a subtree of another
+     * that fits the same place, using the variables of the Program around it
+     *
+     * @param donor the Statement to take the subtree from
+     * @param scope the variables visible to the Statement
+     * @param taken the variables other Statements declare
+     * @return false if nothing was changed
+     */
+    boolean crossoverSubtree(Statement donor, Grammar.Scope scope, Set<String> taken) {
+        Node root = tree();
+        Node other = donor.tree();
+        if (root == null || other == null) {
+            return false;
+        }
+        Node child = Grammar.crossover(root, scope, taken, other);
+        if (child == null) {
+            return false;
+        }
+        setTree(child);
+        return true;
+    }
+
+    /**
+     * Get the grammar tree, or null if the Statement is not typed or its
+     * tokens were changed directly since
+     *
+     * @return the tree
+     */
+    Node tree() {
+        return tree != null && tokens.hash64() == treeHash ? tree : null;
+    }
+
+    /**
+     * Replace the tokens with those of a grammar tree
+     *
+     * @param root the tree
+     */
+    private void setTree(Node root) {
+        setTokens(root.flatten());
+        tree = root;
+        treeHash = tokens.hash64();
     }
 
     /**
@@ -361,36 +533,52 @@ public class Statement implements Comparable<Statement> {
      * @return the most frequent token
      */
     public String mostCommonToken() {
-        HashMap<String, Integer> counts = new HashMap<>();
-        for (String t : tokens) {
-            switch (t) {
-                case ";":
-                case "(":
-                case ")":
-                case "{":
-                case "}":
-                case "[":
-                case "]":
-                    // don't count these symbols
-                    continue;
-                default:
-                    if (counts.containsKey(t)) {
-                        counts.put(t, counts.get(t) + 1);
-                    } else {
-                        counts.put(t, 1);
-                    }
+        // Statements are short, so the distinct ids are found by a scan
+        int[] distinct = new int[tokens.size()];
+        int[] counts = new int[tokens.size()];
+        int n = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            int t = tokens.id(i);
+            if (isPunctuation(t)) {
+                // don't count these symbols
+                continue;
+            }
+            int k = 0;
+            while (k < n && distinct[k] != t) {
+                k++;
+            }
+            if (k == n) {
+                distinct[n++] = t;
             }
+            counts[k]++;
         }
 
-        String mostCommonToken = "";
-        int mostCommonCount = -1;
-        for (String t : tokens) {
-            if (counts.get(t) > mostCommonCount) {
-                mostCommonToken = t;
-                mostCommonCount = counts.get(t);
+        // Ids are in order of first occurrence, so ties go to the first
+        int mostCommon = -1;
+        for (int k = 0; k < n; k++) {
+            if (mostCommon < 0 || counts[k] > counts[mostCommon]) {
+                mostCommon = k;
             }
         }
-        return mostCommonToken;
+        return mostCommon < 0 ? "" : Symbols.name(distinct[mostCommon]);
+    }
+
+    // Symbols left out of mostCommonToken
+    private static final int[] PUNCTUATION = {
+        Symbols.id(";"), Symbols.id("("), Symbols.id(")"), Symbols.id("{"),
+        Symbols.id("}"), Symbols.id("["), Symbols.id("]")
+    };
+
+    /**
+     * Check if a token is one of the symbols left out of mostCommonToken
+     */
+    private static boolean isPunctuation(int id) {
+        for (int p : PUNCTUATION) {
+            if (p == id) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -408,11 +596,7 @@ public class Statement implements Comparable<Statement> {
      * @return the character count
      */
     public int characterCount() {
-        int count = 0;
-        for (String token : tokens) {
-            count += token.length();
-        }
-        return count;
+        return tokens.characterCount();
     }
 
     /**
@@ -422,7 +606,7 @@ public class Statement implements Comparable<Statement> {
      * @return true if found
      */
     public boolean contains(String target) {
-        return tokens.stream().anyMatch((token) -> (token.equals(target.trim())));
+        return tokens.indexOf(Symbols.find(target.trim())) >= 0;
     }
 
     /**
@@ -432,12 +616,7 @@ public class Statement implements Comparable<Statement> {
      * @return the index of the first occurrence if found, -1 otherwise
      */
     public int indexOf(String target) {
-        for (int i = 0; i < tokens.size(); i++) {
-            if (tokens.get(i).equals(target.trim())) {
-                return i;
-            }
-        }
-        return -1;
+        return tokens.indexOf(Symbols.find(target.trim()));
     }
 
     /**
@@ -447,13 +626,7 @@ public class Statement implements Comparable<Statement> {
      * @return the count of the occurrence, otherwise 0
      */
     public int count(String target) {
-        int count = 0;
-        for (int i = 0; i < tokens.size(); i++) {
-            if (tokens.get(i).equals(target.trim())) {
-                count++;
-            }
-        }
-        return count;
+        return tokens.count(Symbols.find(target.trim()));
     }
 
     /**
@@ -462,9 +635,7 @@ public class Statement implements Comparable<Statement> {
      * @param other the Statement to append after this Statement
      */
     public void append(Statement other) {
-        for (String t : other.getTokens()) {
-            tokens.add(t);
-        }
+        tokens.addAll(tokens.size(), other.tokens.ids(0, other.length()));
     }
 
     /**
@@ -473,11 +644,7 @@ public class Statement implements Comparable<Statement> {
      * @param other the Statement to prepend on this Statement
      */
     public void prepend(Statement other) {
-        ArrayList<String> temp = deepCopy(other.getTokens());
-        Collections.reverse(temp);
-        for (String t : temp) {
-            tokens.add(0, t);
-        }
+        tokens.addAll(0, other.tokens.ids(0, other.length()));
     }
 
     /**
@@ -488,26 +655,31 @@ public class Statement implements Comparable<Statement> {
      * @param other the Statement to splice into on this Statement
      */
     public void splice(int index, Statement other) {
+        int[] ids = other.tokens.ids(0, other.length());
         if (index > tokens.size()) {
-            tokens.addAll(deepCopy(other.getTokens()));
+            tokens.addAll(tokens.size(), ids);
             return;
         }
         index = Math.max(index, 0);
-        tokens.addAll(index, deepCopy(other.getTokens()));
+        tokens.addAll(index, ids);
     }
 
     /**
      * Reverse the order of the tokens; probably not a useful operation.
      */
     public void reverse() {
-        Collections.reverse(tokens);
+        tokens.reverse();
     }
 
     /**
      * Shuffle the order of the tokens; probably not a useful operation.
      */
     public void shuffle() {
-        Collections.shuffle(tokens);
+        // Same walk as Rng.shuffle
+        RandomGenerator r = Rng.get();
+        for (int i = tokens.size(); i > 1; i--) {
+            tokens.swap(i - 1, r.nextInt(i));
+        }
     }
 
     /**
@@ -525,9 +697,9 @@ public class Statement implements Comparable<Statement> {
      * Swaps two tokens, at random
      */
     public void swapTokens() {
-        int i = (new Random()).nextInt(tokens.size());
-        int j = (new Random()).nextInt(tokens.size());
-        Collections.swap(tokens, i, j);
+        int i = Rng.get().nextInt(tokens.size());
+        int j = Rng.get().nextInt(tokens.size());
+        tokens.swap(i, j);
     }
 
     /**
@@ -541,45 +713,18 @@ public class Statement implements Comparable<Statement> {
         first = Math.max(first, 0);
         second = Math.min(second, tokens.size() - 1);
         second = Math.max(second, 0);
-        Collections.swap(tokens, first, second);
+        tokens.swap(first, second);
     }
 
     /**
-     * Checks if parentheses, brackets, and braces are balanced
+     * Checks if parentheses, brackets, and braces are balanced. The summary
+     * of the brackets is kept as the tokens change, so this is cheap enough
+     * to check every candidate Statement.
      *
      * @return true if balanced, false otherwise
      */
     public boolean balanced() {
-        String s = this.toString();
-        Stack<Character> stack = new Stack<>();
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            switch (c) {
-                case '[':
-                case '(':
-                case '{':
-                    stack.push(c);
-                    break;
-                case ']':
-                    if (stack.isEmpty() || stack.pop() != '[') {
-                        return false;
-                    }
-                    break;
-                case ')':
-                    if (stack.isEmpty() || stack.pop() != '(') {
-                        return false;
-                    }
-                    break;
-                case '}':
-                    if (stack.isEmpty() || stack.pop() != '{') {
-                        return false;
-                    }
-                    break;
-                default:
-                    break;
-            }
-        }
-        return stack.isEmpty();
+        return tokens.brackets().isBalanced();
     }
 
     /**
@@ -598,11 +743,18 @@ public class Statement implements Comparable<Statement> {
      */
     @Override
     public String toString() {
-        String str = "";
-        for (String t : tokens) {
-            str += t + " ";
-        }
-        return str;
+        // Kept until the tokens change
+        return tokens.render();
+    }
+
+    /**
+     * Write the String representation of the statement
+     *
+     * @param out where to write the Statement
+     * @throws IOException if the Writer fails
+     */
+    public void writeTo(Writer out) throws IOException {
+        out.write(tokens.render());
     }
 
     /**
@@ -610,7 +762,7 @@ public class Statement implements Comparable<Statement> {
      * the same object, or if they are different but contain the same Statements
      *
      * @param obj the other Statement to compare
-     * @return true, if equal by memory or toString()
+     * @return true, if equal by memory or by hash and token ids
      */
     @Override
     public boolean equals(Object obj) {
@@ -621,22 +773,27 @@ public class Statement implements Comparable<Statement> {
             return false;
         }
 
-        String str1 = this.toString();
-        String str2 = ((Statement) obj).toString();
+        return tokens.equals(((Statement) obj).tokens);
+    }
 
-        return str1.equals(str2);
+    /**
+     * Get the 64-bit structural hash of this Statement, kept up to date as its
+     * tokens change. Equal Statements have equal hashes, in any run.
+     *
+     * @return the structural hash
+     */
+    public long structuralHash() {
+        return tokens.hash64();
     }
 
     /**
      * Produces a hashCode representation of this Statement
      *
-     * @return the hashCode
+     * @return the hashCode, from the structural hash
      */
     @Override
     public int hashCode() {
-        int hash = 5;
-        hash = 29 * hash + Objects.hashCode(this.tokens);
-        return hash;
+        return tokens.hashCode();
     }
 
     /**
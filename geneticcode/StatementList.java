@@ -0,0 +1,930 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Comparator;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The Statements of a Program, keeping running totals as they change: the
+ * token and character counts, a multiset of Statement lengths, and token and
+ * word frequency tables.
+ *
+ * A Statement belongs to at most one list at a time, so its TokenList can
+ * report its own changes here, which count once for every place the Statement
+ * fills. A Statement that already belongs to another list is copied on the
+ * way in. Sub-lists write through the list's own methods, so they keep the
+ * totals too.
+ *
+ * Containment queries use a TokenIndex, built on the first query and kept up
+ * to date from then on. Bulk changes drop it, to be built again when needed.
+ * While it is kept, so are the places each Statement fills, so a token edit
+ * finds the entries to fix without a scan. Changes that move Statements drop
+ * the places, and the next token edit finds them again in one pass.
+ *
+ * The rendered main() and the structural hash are kept until the next
+ * change, built from the Statements' own cached renderings and hashes.
+ *
+ * Programs copied from one another share one list until either changes it,
+ * see share() and unshare(). A list whose Statements were handed out is never
+ * shared, since they could still be changed from outside.
+ *
+ */
+class StatementList extends ArrayList<Statement> {
+
+    private static final long serialVersionUID = 1L;
+
+    private int tokens = 0;
+    private int chars = 0;
+    // Characters that are neither whitespace nor ';'
+    private int scored = 0;
+    // Statement length to the number of Statements that long
+    private final TreeMap<Integer, Integer> lengths = new TreeMap<>();
+    // Token id to the number of times it occurs
+    private final HashMap<Integer, Integer> counts = new HashMap<>();
+    // Id of a word of the rendered program to the number of times it occurs
+    private final HashMap<Integer, Integer> words = new HashMap<>();
+
+    // The rendered main(), or null if it changed since
+    private String text;
+    // The structural hash, if hashed is set
+    private long hash;
+    // Volatile, so a Program sharing the list never sees it without the hash
+    private volatile boolean hashed = false;
+    // The brackets of the Statements in order, or null if they changed since
+    private volatile Brackets brackets;
+
+    // Token id to Statement positions, null until the first query
+    private TokenIndex index;
+    // The places each Statement fills, kept with the index, null if unknown
+    private IdentityHashMap<TokenList, int[]> places;
+
+    // Programs using this list, and whether its Statements were handed out
+    private int sharers = 1;
+    private boolean exposed = false;
+
+    // The empty word, before every Statement
+    private static final int EMPTY = Symbols.id("");
+
+    private static final String HEADER = "int main(){\n";
+    private static final String INDENT = "   ";
+    private static final String FOOTER = "}";
+
+    /**
+     * Construct an empty list
+     */
+    StatementList() {
+    }
+
+    /**
+     * Construct a list holding the given Statements, copying any that belong
+     * to another list
+     *
+     * @param statements the Statements to add
+     */
+    StatementList(Collection<? extends Statement> statements) {
+        addAll(statements);
+    }
+
+    /**
+     * Construct a copy of another list, taking its totals as they are. The
+     * Statements are copied, sharing their tokens until they change.
+     *
+     * @param other the list to copy
+     */
+    private StatementList(StatementList other) {
+        super(other.size());
+        for (Statement s : other) {
+            Statement copy = new Statement(s);
+            copy.list().owner = this;
+            copy.list().uses = 1;
+            super.add(copy);
+        }
+        tokens = other.tokens;
+        chars = other.chars;
+        scored = other.scored;
+        lengths.putAll(other.lengths);
+        counts.putAll(other.counts);
+        words.putAll(other.words);
+        text = other.text;
+        // Hash is written before hashed, so read it after
+        boolean done = other.hashed;
+        hash = other.hash;
+        hashed = done;
+        brackets = other.brackets;
+    }
+
+    /**
+     * Get a list for a copy of the Program that uses this one. The list
+     * itself is shared unless its Statements were handed out.
+     *
+     * @return this list, or a copy of it
+     */
+    synchronized StatementList share() {
+        if (exposed) {
+            return new StatementList(this);
+        }
+        sharers++;
+        return this;
+    }
+
+    /**
+     * Get a list the calling Program can change without affecting any other
+     * Program
+     *
+     * @return this list if no other Program uses it, or else a copy
+     */
+    synchronized StatementList unshare() {
+        if (sharers == 1) {
+            return this;
+        }
+        sharers--;
+        return new StatementList(this);
+    }
+
+    /**
+     * Note that Statements of this list were handed out, so it is never
+     * shared again. Only call on an unshared list.
+     */
+    synchronized void expose() {
+        exposed = true;
+    }
+
+    /**
+     * Count the tokens across all Statements
+     *
+     * @return the token count
+     */
+    int getTokenCount() {
+        return tokens;
+    }
+
+    /**
+     * Count the characters across all tokens
+     *
+     * @return the character count
+     */
+    int getCharacterCount() {
+        return chars;
+    }
+
+    /**
+     * Count the characters across all tokens that are neither whitespace nor
+     * ';'
+     *
+     * @return the character count
+     */
+    int getScoredCharacterCount() {
+        return scored;
+    }
+
+    /**
+     * Get the length of the longest Statement
+     *
+     * @return the longest length, or 0 if there are no Statements
+     */
+    int getLongest() {
+        return lengths.isEmpty() ? 0 : lengths.lastKey();
+    }
+
+    /**
+     * Get the length of the shortest Statement
+     *
+     * @return the shortest length, or 0 if there are no Statements
+     */
+    int getShortest() {
+        return lengths.isEmpty() ? 0 : lengths.firstKey();
+    }
+
+    /**
+     * Count the occurrences of a token
+     *
+     * @param token the token to count
+     * @return the number of times it occurs
+     */
+    int count(String token) {
+        Integer n = counts.get(Symbols.find(token));
+        return n == null ? 0 : n;
+    }
+
+    /**
+     * Count the different words of the rendered program, split on single
+     * whitespace characters, when the Statements are framed by the given
+     * words. Rendering puts an empty word before every Statement.
+     *
+     * @param frame the ids of the words around the Statements, all different
+     * @return the unique word count
+     */
+    int getUniqueWords(int[] frame) {
+        int unique = words.size();
+        for (int w : frame) {
+            if (!words.containsKey(w)) {
+                unique++;
+            }
+        }
+        if (!isEmpty() && !words.containsKey(EMPTY)) {
+            unique++;
+        }
+        return unique;
+    }
+
+    /**
+     * Render the Statements as a main() method, reusing the last rendering
+     * if nothing changed since
+     *
+     * @return the program text
+     */
+    String render() {
+        String str = text;
+        if (str == null) {
+            // "int main(){\n", then "   " + Statement + "\n" each, then "}"
+            StringBuilder sb = new StringBuilder(13 + 4 * size() + chars + tokens);
+            sb.append(HEADER);
+            for (Statement s : this) {
+                sb.append(INDENT).append(s.list().render()).append('\n');
+            }
+            sb.append(FOOTER);
+            str = sb.toString();
+            text = str;
+        }
+        return str;
+    }
+
+    /**
+     * Write the same text as render() without building it as one String
+     *
+     * @param out where to write the program text
+     * @throws IOException if the Writer fails
+     */
+    void writeTo(Writer out) throws IOException {
+        if (text != null) {
+            out.write(text);
+            return;
+        }
+        out.write(HEADER);
+        for (Statement s : this) {
+            out.write(INDENT);
+            out.write(s.list().render());
+            out.write('\n');
+        }
+        out.write(FOOTER);
+    }
+
+    /**
+     * Get the positions of the Statements holding a token
+     *
+     * @param token the token
+     * @return the positions, which must not be changed
+     */
+    BitSet containing(String token) {
+        int id = Symbols.find(token);
+        BitSet bits = id < 0 ? null : index().get(id);
+        return bits == null ? new BitSet() : bits;
+    }
+
+    /**
+     * Get the positions of the Statements holding any of the given tokens
+     *
+     * @param targets the tokens
+     * @return the positions
+     */
+    BitSet containingAny(List<String> targets) {
+        BitSet any = new BitSet();
+        for (String t : targets) {
+            any.or(containing(t));
+        }
+        return any;
+    }
+
+    /**
+     * Get the positions of the Statements holding all of the given tokens
+     *
+     * @param targets the tokens
+     * @return the positions
+     */
+    BitSet containingAll(List<String> targets) {
+        BitSet all = new BitSet();
+        all.set(0, size());
+        for (String t : targets) {
+            all.and(containing(t));
+            if (all.isEmpty()) {
+                break;
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Get the index, building it if needed. Copies of a Program may read a
+     * shared list from several threads, so building it is synchronized.
+     */
+    private synchronized TokenIndex index() {
+        if (index == null) {
+            index = new TokenIndex(this);
+        }
+        return index;
+    }
+
+    /**
+     * Drop the index, and the places kept with it
+     */
+    private void dropIndex() {
+        index = null;
+        places = null;
+    }
+
+    /**
+     * Get the structural hash of the Statements, folded from the hashes the
+     * Statements keep up to date. Lists of equal Statements in the same order
+     * have the same hash, in any run.
+     *
+     * @return the 64-bit hash
+     */
+    long hash64() {
+        if (!hashed) {
+            long h = size();
+            for (Statement s : this) {
+                h = Symbols.mix(h * 31 + s.list().hash64());
+            }
+            hash = h;
+            hashed = true;
+        }
+        return hash;
+    }
+
+    /**
+     * Get the summary of the brackets of the Statements in order, folded from
+     * those the Statements keep
+     *
+     * @return the summary
+     */
+    Brackets brackets() {
+        Brackets b = brackets;
+        if (b == null) {
+            b = Brackets.NONE;
+            for (int i = 0; i < size() && b != Brackets.MISMATCH; i++) {
+                b = b.then(get(i).list().brackets());
+            }
+            brackets = b;
+        }
+        return b;
+    }
+
+    /**
+     * Drop the rendered main(), the hash and the brackets, since a Statement
+     * changed
+     */
+    void changed() {
+        stale();
+    }
+
+    /**
+     * Drop everything derived from the Statements' order and content
+     */
+    private void stale() {
+        text = null;
+        hashed = false;
+        brackets = null;
+    }
+
+    @Override
+    public boolean add(Statement statement) {
+        Statement adopted = adopt(statement);
+        super.add(adopted);
+        if (index != null) {
+            index.put(size() - 1, adopted.list());
+            place(adopted.list(), size() - 1);
+        }
+        return true;
+    }
+
+    @Override
+    public void add(int pos, Statement statement) {
+        Statement adopted = adopt(statement);
+        super.add(pos, adopted);
+        if (index != null) {
+            places = null;
+            index.insert(pos);
+            index.put(pos, adopted.list());
+        }
+    }
+
+    @Override
+    public Statement set(int pos, Statement statement) {
+        Statement adopted = adopt(statement);
+        Statement old = super.set(pos, adopted);
+        release(old);
+        if (index != null) {
+            index.clear(pos, old.list());
+            index.put(pos, adopted.list());
+            unplace(old.list(), pos);
+            place(adopted.list(), pos);
+        }
+        return old;
+    }
+
+    @Override
+    public Statement remove(int pos) {
+        Statement old = super.remove(pos);
+        release(old);
+        if (index != null) {
+            places = null;
+            index.clear(pos, old.list());
+            index.delete(pos);
+        }
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Statement> c) {
+        int start = size();
+        boolean changed = super.addAll(adoptAll(c));
+        if (index != null) {
+            for (int i = start; i < size(); i++) {
+                index.put(i, get(i).list());
+                place(get(i).list(), i);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean addAll(int pos, Collection<? extends Statement> c) {
+        dropIndex();
+        return super.addAll(pos, adoptAll(c));
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        List<Statement> before = new ArrayList<>(this);
+        boolean changed = super.removeAll(c);
+        releaseMissing(before);
+        return changed;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        List<Statement> before = new ArrayList<>(this);
+        boolean changed = super.retainAll(c);
+        releaseMissing(before);
+        return changed;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Statement> filter) {
+        List<Statement> before = new ArrayList<>(this);
+        boolean changed = super.removeIf(filter);
+        releaseMissing(before);
+        return changed;
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<Statement> operator) {
+        for (int i = 0; i < size(); i++) {
+            set(i, operator.apply(get(i)));
+        }
+    }
+
+    @Override
+    public void sort(Comparator<? super Statement> c) {
+        super.sort(c);
+        dropIndex();
+        stale();
+    }
+
+    @Override
+    public void clear() {
+        dropIndex();
+        for (Statement s : this) {
+            release(s);
+        }
+        super.clear();
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        dropIndex();
+        for (int i = fromIndex; i < toIndex; i++) {
+            release(get(i));
+        }
+        super.removeRange(fromIndex, toIndex);
+    }
+
+    /**
+     * Lay the list out again in one pass. Statements of this list that are
+     * kept stay in the totals as they are, only the ones dropped or new are
+     * taken out or added, so the cost is the number of Statements plus the
+     * tokens of those that changed.
+     *
+     * @param order the Statements in their new order
+     */
+    void compact(List<Statement> order) {
+        // Places each Statement of this list keeps
+        IdentityHashMap<Statement, Integer> kept = new IdentityHashMap<>();
+        boolean[] fresh = new boolean[order.size()];
+        for (int i = 0; i < order.size(); i++) {
+            Statement s = order.get(i);
+            if (s.list().owner == this) {
+                kept.merge(s, 1, Integer::sum);
+            } else {
+                fresh[i] = true;
+            }
+        }
+        for (Statement s : this) {
+            Integer k = kept.get(s);
+            if (k == null) {
+                release(s);
+            } else if (k == 1) {
+                kept.remove(s);
+            } else {
+                kept.put(s, k - 1);
+            }
+        }
+        // Whatever is left in kept fills more places than before
+        List<Statement> laid = new ArrayList<>(order.size());
+        for (int i = 0; i < order.size(); i++) {
+            Statement s = order.get(i);
+            if (fresh[i]) {
+                s = adopt(s);
+            } else {
+                Integer k = kept.get(s);
+                if (k != null) {
+                    adopt(s);
+                    if (k == 1) {
+                        kept.remove(s);
+                    } else {
+                        kept.put(s, k - 1);
+                    }
+                }
+            }
+            laid.add(s);
+        }
+        super.clear();
+        super.addAll(laid);
+        dropIndex();
+        stale();
+    }
+
+    @Override
+    public List<Statement> subList(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size());
+        return new SubList(fromIndex, toIndex);
+    }
+
+    /**
+     * Take ownership of a Statement for one more place, copying it if it
+     * belongs to another list, and add it to the totals
+     */
+    private Statement adopt(Statement statement) {
+        TokenList list = statement.list();
+        if (list.owner != null && list.owner != this) {
+            statement = new Statement(statement);
+            list = statement.list();
+        }
+        list.owner = this;
+        list.uses++;
+        total(list, 1);
+        return statement;
+    }
+
+    private List<Statement> adoptAll(Collection<? extends Statement> c) {
+        List<Statement> adopted = new ArrayList<>(c.size());
+        for (Statement s : c) {
+            adopted.add(adopt(s));
+        }
+        return adopted;
+    }
+
+    /**
+     * Give up one place of a Statement and take it out of the totals, and
+     * give up ownership once it fills no place
+     */
+    private void release(Statement statement) {
+        TokenList list = statement.list();
+        total(list, -1);
+        if (--list.uses == 0) {
+            list.owner = null;
+        }
+    }
+
+    /**
+     * Release the places that were removed by a bulk change
+     */
+    private void releaseMissing(List<Statement> before) {
+        if (before.size() == size()) {
+            return;
+        }
+        dropIndex();
+        IdentityHashMap<Statement, Integer> kept = new IdentityHashMap<>();
+        for (Statement s : this) {
+            kept.merge(s, 1, Integer::sum);
+        }
+        for (Statement s : before) {
+            Integer n = kept.get(s);
+            if (n == null) {
+                release(s);
+            } else if (n == 1) {
+                kept.remove(s);
+            } else {
+                kept.put(s, n - 1);
+            }
+        }
+    }
+
+    /**
+     * Add a whole Statement's tokens to the totals, after a bulk change
+     *
+     * @param list the Statement's tokens
+     */
+    void account(TokenList list) {
+        total(list, list.uses);
+        if (index != null) {
+            for (int pos : positions(list)) {
+                index.put(pos, list);
+            }
+        }
+    }
+
+    /**
+     * Take a whole Statement's tokens out of the totals, before a bulk change
+     *
+     * @param list the Statement's tokens
+     */
+    void retract(TokenList list) {
+        total(list, -list.uses);
+        if (index != null) {
+            for (int pos : positions(list)) {
+                index.clear(pos, list);
+            }
+        }
+    }
+
+    /**
+     * A Statement's tokens are about to be replaced by a new list
+     *
+     * @param old the Statement's tokens
+     * @param next the tokens replacing them
+     */
+    void replaced(TokenList old, TokenList next) {
+        int[] at = index != null ? positions(old) : null;
+        total(old, -old.uses);
+        total(next, old.uses);
+        if (at != null) {
+            for (int pos : at) {
+                index.clear(pos, old);
+                index.put(pos, next);
+            }
+            places.remove(old);
+            places.put(next, at);
+        }
+    }
+
+    /**
+     * A token was added to one of the Statements
+     *
+     * @param list the Statement's tokens
+     * @param oldLength the length of the Statement before
+     * @param token the id of the new token
+     */
+    void tokenAdded(TokenList list, int oldLength, int token) {
+        increment(lengths, oldLength, -list.uses);
+        increment(lengths, oldLength + 1, list.uses);
+        update(token, list.uses);
+        if (index != null) {
+            for (int pos : positions(list)) {
+                index.set(token, pos);
+            }
+        }
+    }
+
+    /**
+     * A token was removed from one of the Statements
+     *
+     * @param list the Statement's tokens
+     * @param oldLength the length of the Statement before
+     * @param token the id of the removed token
+     */
+    void tokenRemoved(TokenList list, int oldLength, int token) {
+        increment(lengths, oldLength, -list.uses);
+        increment(lengths, oldLength - 1, list.uses);
+        update(token, -list.uses);
+        if (index != null && list.count(token) == 0) {
+            for (int pos : positions(list)) {
+                index.clear(token, pos);
+            }
+        }
+    }
+
+    /**
+     * A token of one of the Statements was replaced
+     *
+     * @param list the Statement's tokens
+     * @param old the id of the token that was there
+     * @param token the id of the new token
+     */
+    void tokenReplaced(TokenList list, int old, int token) {
+        update(old, -list.uses);
+        update(token, list.uses);
+        if (index != null) {
+            boolean gone = list.count(old) == 0;
+            for (int pos : positions(list)) {
+                if (gone) {
+                    index.clear(old, pos);
+                }
+                index.set(token, pos);
+            }
+        }
+    }
+
+    /**
+     * Get the places a Statement fills, finding them all again if a change
+     * moved Statements since. Only called while the index is kept.
+     */
+    private int[] positions(TokenList list) {
+        if (places == null) {
+            places = new IdentityHashMap<>();
+            for (int i = 0; i < size(); i++) {
+                place(get(i).list(), i);
+            }
+        }
+        int[] at = places.get(list);
+        return at == null ? new int[0] : at;
+    }
+
+    /**
+     * Note that a Statement fills one more place, if the places are known
+     */
+    private void place(TokenList list, int pos) {
+        if (places != null) {
+            int[] at = places.get(list);
+            if (at == null) {
+                at = new int[]{pos};
+            } else {
+                at = Arrays.copyOf(at, at.length + 1);
+                at[at.length - 1] = pos;
+            }
+            places.put(list, at);
+        }
+    }
+
+    /**
+     * Note that a Statement no longer fills a place, if the places are known
+     */
+    private void unplace(TokenList list, int pos) {
+        if (places != null) {
+            int[] at = places.get(list);
+            int i = 0;
+            while (at[i] != pos) {
+                i++;
+            }
+            if (at.length == 1) {
+                places.remove(list);
+            } else {
+                int[] rest = new int[at.length - 1];
+                System.arraycopy(at, 0, rest, 0, i);
+                System.arraycopy(at, i + 1, rest, i, rest.length - i);
+                places.put(list, rest);
+            }
+        }
+    }
+
+    /**
+     * Add or take out a whole Statement's tokens the given number of times
+     */
+    private void total(TokenList list, int delta) {
+        for (int i = 0; i < list.size(); i++) {
+            update(list.id(i), delta);
+        }
+        increment(lengths, list.size(), delta);
+        stale();
+    }
+
+    /**
+     * Change every total by one occurrence of a token
+     */
+    private void update(int token, int delta) {
+        tokens += delta;
+        chars += delta * Symbols.length(token);
+        scored += delta * Symbols.scored(token);
+        increment(counts, token, delta);
+        for (int w : Symbols.words(token)) {
+            increment(words, w, delta);
+        }
+    }
+
+    /**
+     * Change a count in a multiset, dropping it at zero
+     */
+    private static <K> void increment(Map<K, Integer> map, K key, int delta) {
+        map.merge(key, delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    /**
+     * A view of part of the list. ArrayList's own sub-lists write some
+     * changes straight into its array, past the totals, so every change here
+     * goes through set(), add(), remove() or removeRange() of the list.
+     */
+    private class SubList extends AbstractList<Statement> implements RandomAccess {
+
+        private final int offset;
+        private int size;
+        // The list's modCount as of the last change made through this view
+        private int expected = StatementList.this.modCount;
+
+        SubList(int fromIndex, int toIndex) {
+            offset = fromIndex;
+            size = toIndex - fromIndex;
+        }
+
+        @Override
+        public Statement get(int pos) {
+            Objects.checkIndex(pos, size);
+            check();
+            return StatementList.this.get(offset + pos);
+        }
+
+        @Override
+        public int size() {
+            check();
+            return size;
+        }
+
+        @Override
+        public Statement set(int pos, Statement statement) {
+            Objects.checkIndex(pos, size);
+            check();
+            return StatementList.this.set(offset + pos, statement);
+        }
+
+        @Override
+        public void add(int pos, Statement statement) {
+            Objects.checkIndex(pos, size + 1);
+            check();
+            StatementList.this.add(offset + pos, statement);
+            changed(1);
+        }
+
+        @Override
+        public Statement remove(int pos) {
+            Objects.checkIndex(pos, size);
+            check();
+            Statement old = StatementList.this.remove(offset + pos);
+            changed(-1);
+            return old;
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            check();
+            StatementList.this.removeRange(offset + fromIndex, offset + toIndex);
+            changed(fromIndex - toIndex);
+        }
+
+        /**
+         * Fail if the list was changed other than through this view
+         */
+        private void check() {
+            if (StatementList.this.modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        /**
+         * Follow a change made through this view
+         */
+        private void changed(int delta) {
+            size += delta;
+            expected = StatementList.this.modCount;
+            modCount++;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A steady-state alternative to the generational loop in Main.
+ *
+ * There are no generations. One child at a time is bred with the Operator
+ * methods and handed to the gcc workers, and breeding carries on while it
+ * compiles. As soon as a child is scored it replaces the worst Program in the
+ * population, if it beats it. At most MAX_IN_FLIGHT children are bred ahead
+ * of the workers, so a slow compile holds up one slot and not a whole
+ * generation.
+ *
+ */
+public class SteadyState {
+
+    /**
+     * Number of children bred but not yet scored, at most
+     */
+    public static int MAX_IN_FLIGHT = 2 * Fitness.WORKERS;
+
+    // Same rate as Operator.mutate(population), 3 of every 10 children
+    private static final int MUTATE_IN_10 = 3;
+
+    // Dummy constructor to prevent object instances
+    private SteadyState() {
+    }
+
+    /**
+     * Evolve the population until the evaluations are spent or the deadline
+     * passes
+     *
+     * @param population the scored population, sorted by score
+     * @param evaluations the number of children to score
+     * @param deadline the time in milliseconds to stop breeding
+     * @return the population, sorted by score
+     */
+    public static ArrayList<Program> evolve(ArrayList<Program> population, long evaluations, long deadline) {
+        int slots = Math.max(1, MAX_IN_FLIGHT);
+        Semaphore inFlight = new Semaphore(slots);
+        AtomicLong done = new AtomicLong();
+        PopulationIndex index = new PopulationIndex(population);
+        long startTime = System.currentTimeMillis();
+
+        for (long n = 0; n < evaluations && System.currentTimeMillis() < deadline; n++) {
+            // Backpressure, wait for a worker to catch up
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                Logger.getLogger(SteadyState.class.getName()).log(Level.SEVERE, null, ex);
+                break;
+            }
+
+            Program child = breed(population);
+            Fitness.fitnessAsync(child).whenComplete((scored, ex) -> {
+                try {
+                    if (ex != null) {
+                        Logger.getLogger(SteadyState.class.getName()).log(Level.SEVERE, null, ex);
+                    } else {
+                        synchronized (population) {
+                            insert(population, index, scored);
+                            report(population, index, done.incrementAndGet(), startTime);
+                        }
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        // Wait for the last children to come back
+        inFlight.acquireUninterruptibly(slots);
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        System.out.println("Evaluations per second = " + String.format("%.2f", 1000. * done.get() / elapsed));
+        return population;
+    }
+
+    /**
+     * Breed one child from two tournament winners, copying the parents
+     * because the Operators change Programs in place
+     *
+     * @param population the population to select from
+     * @return the new child
+     */
+    private static Program breed(ArrayList<Program> population) {
+        Program mother;
+        Program father;
+        synchronized (population) {
+            mother = new Program(Operator.tournamentSelection(population));
+            father = new Program(Operator.tournamentSelection(population));
+        }
+        Program child = Operator.crossover(mother, father);
+        if (Rng.get().nextInt(10) < MUTATE_IN_10) {
+            child = Operator.mutate(child);
+        }
+        return child;
+    }
+
+    /**
+     * Replace the worst Program with the child, if the child is better,
+     * keeping the population sorted. The caller holds the population's lock.
+     *
+     * @param population the population, sorted by score
+     * @param index the Statement counts of the population
+     * @param child the scored child
+     */
+    private static void insert(ArrayList<Program> population, PopulationIndex index, Program child) {
+        if (child.compareTo(population.get(0)) <= 0) {
+            return;
+        }
+        index.remove(population.remove(0));
+        index.add(child);
+        int i = Collections.binarySearch(population, child);
+        population.add(i < 0 ? -i - 1 : i, child);
+
+        // Children have to beat the new worst to get in
+        if (Fitness.PRUNE_RANK > 0) {
+            Fitness.setPruneBound(population.get(0).getScore());
+        }
+    }
+
+    /**
+     * Print progress, and the compile latencies, once per population's worth
+     * of evaluations
+     *
+     * @param population the population
+     * @param index the Statement counts of the population
+     * @param done the number of children scored so far
+     * @param startTime the time in milliseconds breeding started
+     */
+    private static void report(ArrayList<Program> population, PopulationIndex index, long done, long startTime) {
+        if (done % population.size() == 0) {
+            index.report((int) (done / population.size()));
+            Watchdog.report();
+            long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+            System.out.println("Evaluations " + done + " ("
+                    + String.format("%.2f", 1000. * done / elapsed) + " per second), best = "
+                    + String.format("%.2f", population.get(population.size() - 1).getScore()));
+        }
+    }
+}
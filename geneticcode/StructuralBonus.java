@@ -0,0 +1,210 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.random.RandomGenerator;
+
+/**
+ * Measures the parts of a Program that Fitness rewards without compiling:
+ * its length in tokens, its length in characters and its number of unique
+ * words.
+ *
+ * The counts are the same as measuring Program.toString(), but taken without
+ * building the text. The text is
+ * "int main(){\n", then "   " + token + " " ... + "\n" for each Statement,
+ * then "}". So the characters are those of the tokens plus the 11 of
+ * "intmain(){}", and the words split on single whitespace characters are
+ * "int", "main(){" and "}", the empty word between the whitespace around
+ * every Statement, and the words of every token.
+ *
+ * The counts come from the running totals the Program keeps as it is edited,
+ * which costs nothing per evaluation. main() checks them against legacy().
+ *
+ */
+class StructuralBonus {
+
+    // Characters of "int main(){" and "}" that are not whitespace
+    private static final int FRAME_CHARS = 11;
+    // The words of the frame around the Statements
+    private static final int[] FRAME_IDS = {Symbols.id("int"), Symbols.id("main(){"), Symbols.id("}")};
+
+    private int length = 0;
+    private int chars = 0;
+    private int unique = 0;
+
+    /**
+     * Measure a Program from the running totals of its Statements, replacing
+     * the last measurement
+     *
+     * @param program the Program to measure
+     * @return this, holding the counts
+     */
+    StructuralBonus measure(Program program) {
+        StatementList list = program.list();
+        length = list.getTokenCount();
+        chars = FRAME_CHARS + list.getScoredCharacterCount();
+        unique = list.getUniqueWords(FRAME_IDS);
+        return this;
+    }
+
+    /**
+     * Get the number of tokens, same as Program.length()
+     *
+     * @return the token count
+     */
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the number of characters of the program text that are neither
+     * whitespace nor ';'
+     *
+     * @return the character count
+     */
+    int getChars() {
+        return chars;
+    }
+
+    /**
+     * Get the number of different words of the program text, split on single
+     * whitespace characters
+     *
+     * @return the unique word count
+     */
+    int getUnique() {
+        return unique;
+    }
+
+    /**
+     * Check for the characters matched by the regex \s
+     */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0b || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Measure a Program the way Fitness used to, from its text
+     *
+     * @param program the Program to measure
+     * @return the token, character and unique word counts
+     */
+    static int[] legacy(Program program) {
+        return new int[]{
+            program.length(),
+            program.toString().replaceAll("\\s", "").replaceAll(";", "").length(),
+            (new HashSet<>(new ArrayList<>(Arrays.asList(program.toString().split("\\s"))))).size()
+        };
+    }
+
+    /**
+     * Edit a Program in place through the Program and Statement operations,
+     * so the running totals are checked after changes as well
+     *
+     * @param p the Program to edit
+     * @param seed picks the edits
+     */
+    private static void edit(Program p, int seed) {
+        RandomGenerator r = Rng.seeded(seed);
+        for (int k = 0; k < 10; k++) {
+            if (p.isEmpty()) {
+                p.addStatement(Factory.getRandomStatement());
+            }
+            Statement s = p.getRandomStatement();
+            try {
+                switch (r.nextInt(12)) {
+                    case 0:
+                        s.addRandomToken();
+                        break;
+                    case 1:
+                        s.removeRandomToken();
+                        break;
+                    case 2:
+                        s.removeToken(0);
+                        s.addToken(0, "a\tb c;");
+                        break;
+                    case 3:
+                        s.swapTokens();
+                        break;
+                    case 4:
+                        s.setTokens(new ArrayList<>(Arrays.asList("x", " ", ";")));
+                        break;
+                    case 5:
+                        p.replaceRandomStatement();
+                        break;
+                    case 6:
+                        p.removeStatements(0, p.size() / 2);
+                        break;
+                    case 7:
+                        p.addStatement(s);
+                        break;
+                    case 8:
+                        p.swapStatements();
+                        break;
+                    case 9:
+                        p.append(new Program(p));
+                        break;
+                    case 10:
+                        s.reverse();
+                        break;
+                    default:
+                        p.removeRandomStatement();
+                        break;
+                }
+            } catch (RuntimeException ex) {
+                // Some operations reject short Programs and Statements
+            }
+        }
+    }
+
+    /**
+     * Check the running counts against the old text-based ones
+     *
+     * Usage: StructuralBonus [programs]
+     *
+     * @param args the number of random Programs to check, 2000 by default
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        // Awkward Programs first, then random, mutated and edited ones
+        ArrayList<Program> programs = new ArrayList<>();
+        programs.add(new Program(new ArrayList<>()));
+        ArrayList<Statement> odd = new ArrayList<>();
+        odd.add(new Statement(new ArrayList<>()));
+        odd.add(new Statement(new ArrayList<>(Arrays.asList("", " ", "a b", "\tx\n", ";;", "int", "}", "main(){", "; ;"))));
+        programs.add(new Program(odd));
+        Program shared = new Program(odd);
+        shared.addStatement(shared.getStatement(1));
+        shared.getStatement(2).addToken("shared");
+        programs.add(shared);
+        for (int i = 0; i < n; i++) {
+            Program p = Factory.makeRandomProgram(1 + i % 25);
+            if (i % 2 == 0) {
+                Operator.mutate(p);
+            }
+            if (i % 3 == 0) {
+                edit(p, i);
+            }
+            programs.add(p);
+        }
+
+        int mismatches = 0;
+        for (Program p : programs) {
+            int[] expected = legacy(p);
+            StructuralBonus b = new StructuralBonus().measure(p);
+            if (expected[0] != b.getLength() || expected[1] != b.getChars() || expected[2] != b.getUnique()) {
+                mismatches++;
+                System.out.println("Expected " + Arrays.toString(expected) + " but counted ["
+                        + b.getLength() + ", " + b.getChars() + ", " + b.getUnique() + "] for\n" + p);
+            }
+        }
+        System.out.println(programs.size() + " programs, " + mismatches + " mismatches");
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
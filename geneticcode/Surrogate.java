@@ -0,0 +1,148 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cheap model of gcc, trained online during a run, that predicts how many
+ * words of errors a Program will produce.
+ *
+ * The model is linear over hashed token unigrams and bigrams, with one bigram
+ * across each Statement boundary. It is trained by normalized least mean
+ * squares on every real compile result, so it adapts as the population
+ * drifts and needs no tuning of the learning rate to the scale of the target.
+ *
+ */
+public class Surrogate {
+
+    // Number of hashed features, a power of two
+    private static final int FEATURES = 1 << 16;
+    // Step size of the normalized update, between 0 and 2
+    private static final double RATE = 0.2;
+    // Marks the start of a Statement in the bigrams
+    private static final int START = 0x9e3779b9;
+
+    private final double[] weights = new double[FEATURES];
+    private double bias = 0;
+    private long samples = 0;
+
+    // Rank correlation of prediction and truth, one entry per generation
+    private final List<Double> correlations = new ArrayList<>();
+
+    /**
+     * Hash tokens into the feature vector of a Program
+     *
+     * @param program the Program
+     * @return the index of every feature present, repeated per occurrence
+     */
+    private static int[] features(Program program) {
+        int n = 0;
+        for (Statement s : program.list()) {
+            n += 2 * s.length();
+        }
+        int[] index = new int[n];
+        int i = 0;
+        for (Statement s : program.list()) {
+            int previous = START;
+            for (String token : s.list()) {
+                int h = token.hashCode();
+                index[i++] = mix(h) & (FEATURES - 1);
+                index[i++] = mix(31 * previous + h) & (FEATURES - 1);
+                previous = h;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Spread the bits of a hash
+     */
+    private static int mix(int h) {
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Predict the number of error words gcc would report for a Program
+     *
+     * @param program the Program
+     * @return the predicted error-word count, at least 0
+     */
+    public synchronized double predict(Program program) {
+        return Math.max(0, raw(features(program)));
+    }
+
+    private double raw(int[] index) {
+        double sum = bias;
+        for (int i : index) {
+            sum += weights[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Learn from one real compile
+     *
+     * @param program the compiled Program
+     * @param errorWords the error-word count gcc reported
+     */
+    public synchronized void train(Program program, int errorWords) {
+        int[] index = features(program);
+        double error = errorWords - raw(index);
+        // Each index counts once per occurrence, plus one for the bias
+        double norm = index.length + 1;
+        double step = RATE * error / norm;
+        bias += step;
+        for (int i : index) {
+            weights[i] += step;
+        }
+        samples++;
+    }
+
+    /**
+     * Get the number of compile results learned from
+     *
+     * @return the sample count
+     */
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Record how well predictions ranked one generation
+     *
+     * @param predicted the predictions made before compiling
+     * @param actual the error-word counts gcc reported
+     * @return the Spearman rank correlation
+     */
+    synchronized double recordGeneration(double[] predicted, double[] actual) {
+        double rho = SyntaxChecker.pearson(SyntaxChecker.ranks(predicted), SyntaxChecker.ranks(actual));
+        correlations.add(rho);
+        return rho;
+    }
+
+    /**
+     * Get the rank correlation of the latest generation, the higher the safer
+     * it is to compile fewer Programs
+     *
+     * @return the Spearman correlation, or NaN before the first generation
+     */
+    public synchronized double getRankCorrelation() {
+        return correlations.isEmpty() ? Double.NaN : correlations.get(correlations.size() - 1);
+    }
+
+    /**
+     * Get the rank correlation of every generation so far
+     *
+     * @return the Spearman correlations, oldest first
+     */
+    public synchronized List<Double> getRankCorrelations() {
+        return new ArrayList<>(correlations);
+    }
+}
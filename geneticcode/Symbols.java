@@ -0,0 +1,224 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The global symbol table of tokens.
+ *
+ * Every token is interned once and then handled by its id, so Statements can
+ * store, copy and compare tokens as ints. The table also keeps what the
+ * running totals need to know about each token: its length, its characters
+ * that are neither whitespace nor ';', the ids of its words when split on
+ * single whitespace characters, a 64-bit hash of its text for the
+ * structural hashes of Statements and Programs, and a summary of its
+ * brackets. The vocabulary of the Factory is small (the
+ * keywords, operators and variables, plus at most some 40,000 literals), so
+ * the table is never emptied.
+ *
+ * Ids are only meaningful within one run, but the hashes only depend on the
+ * text.
+ *
+ */
+class Symbols {
+
+    // The id of a null token
+    static final int NULL = 0;
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // Indexed by id, replaced when it grows
+    private static volatile Symbol[] table = new Symbol[1024];
+    private static int size = 0;
+
+    static {
+        size = 1;
+        // A null token renders as the word "null"
+        table[NULL] = new Symbol(null, new int[]{id("null")});
+    }
+
+    // Dummy constructor to prevent object instances
+    private Symbols() {
+    }
+
+    /**
+     * Get the id of a token, adding it to the table if it is new
+     *
+     * @param token the token
+     * @return its id
+     */
+    static int id(String token) {
+        if (token == null) {
+            return NULL;
+        }
+        Integer id = ids.get(token);
+        return id != null ? id : add(token);
+    }
+
+    /**
+     * Get the id of a token without adding it to the table
+     *
+     * @param token the token
+     * @return its id, or -1 if no Statement has held it
+     */
+    static int find(String token) {
+        if (token == null) {
+            return NULL;
+        }
+        Integer id = ids.get(token);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Get the token with the given id
+     *
+     * @param id the id
+     * @return the token
+     */
+    static String name(int id) {
+        return table[id].name;
+    }
+
+    /**
+     * Get the length of a token, counting a null token like its text
+     *
+     * @param id the id
+     * @return the number of characters
+     */
+    static int length(int id) {
+        return table[id].text.length();
+    }
+
+    /**
+     * Get the number of characters of a token that are neither whitespace nor
+     * ';'
+     *
+     * @param id the id
+     * @return the character count
+     */
+    static int scored(int id) {
+        return table[id].scored;
+    }
+
+    /**
+     * Get the words of a token, split on single whitespace characters. The
+     * array must not be changed.
+     *
+     * @param id the id
+     * @return the ids of the words
+     */
+    static int[] words(int id) {
+        return table[id].words;
+    }
+
+    /**
+     * Get the 64-bit hash of a token, which only depends on its text
+     *
+     * @param id the id
+     * @return the hash
+     */
+    static long hash(int id) {
+        return table[id].hash;
+    }
+
+    /**
+     * Get the summary of the brackets of a token
+     *
+     * @param id the id
+     * @return the summary
+     */
+    static Brackets brackets(int id) {
+        return table[id].brackets;
+    }
+
+    /**
+     * Scramble the bits of a 64-bit value (the SplitMix64 finalizer)
+     *
+     * @param z the value
+     * @return the scrambled value
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Get the number of tokens interned so far
+     *
+     * @return the table size
+     */
+    static int size() {
+        return size;
+    }
+
+    /**
+     * Add a token to the table, unless another thread got there first
+     */
+    private static synchronized int add(String token) {
+        Integer id = ids.get(token);
+        if (id != null) {
+            return id;
+        }
+        // The words are interned first, since they take slots of their own
+        String[] split = token.split("\\s", -1);
+        int[] words = null;
+        if (split.length > 1) {
+            words = new int[split.length];
+            for (int i = 0; i < split.length; i++) {
+                words[i] = id(split[i]);
+            }
+        }
+        // Likewise anything interned while building the entry
+        Symbol symbol = new Symbol(token, words);
+        int next = size;
+        if (next == table.length) {
+            table = Arrays.copyOf(table, next * 2);
+        }
+        if (symbol.words == null) {
+            // A token without whitespace is its own only word
+            symbol.words = new int[]{next};
+        }
+        table[next] = symbol;
+        size++;
+        // Published last, so anyone who finds the id also sees the entry
+        ids.put(token, next);
+        return next;
+    }
+
+    /**
+     * One entry of the table
+     */
+    private static class Symbol {
+
+        private final String name;
+        private final String text;
+        private final int scored;
+        private final long hash;
+        private final Brackets brackets;
+        private int[] words;
+
+        Symbol(String name, int[] words) {
+            this.name = name;
+            this.words = words;
+            text = String.valueOf(name);
+            int n = 0;
+            // FNV-1a over the characters
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (!StructuralBonus.isWhitespace(c) && c != ';') {
+                    n++;
+                }
+                h = (h ^ c) * 0x100000001b3L;
+            }
+            scored = n;
+            // A null token gets its own hash, apart from "null"
+            hash = name == null ? mix(0) : mix(h);
+            brackets = Brackets.of(text);
+        }
+    }
+}
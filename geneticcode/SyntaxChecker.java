@@ -0,0 +1,928 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.random.RandomGenerator;
+
+/**
+ * A recursive-descent parser for the subset of C++ that Factory emits, used to
+ * estimate how badly gcc will complain about a Program without running gcc.
+ *
+ * The parser follows gcc closely enough to count its diagnostics: syntax
+ * errors, names used before they are declared (reported once per scope, as
+ * g++ does), redeclarations, break/continue/case outside a loop or switch,
+ * "return;" in main(), uninitialized consts, ++/-- and assignment on things
+ * that are not variables, and integer-only operators on floating operands.
+ *
+ * The estimate of error words is linear in the diagnostic counts, see main()
+ * for the calibration report that checks the coefficients against gcc.
+ *
+ */
+public class SyntaxChecker {
+
+    /**
+     * Words in the "In function 'int main()':" header
+     */
+    public static double WORDS_PER_PROGRAM = 4.0;
+    /**
+     * Words in each diagnostic, besides the quoted source line
+     */
+    public static double WORDS_PER_DIAGNOSTIC = 25.0;
+    /**
+     * Words added to each diagnostic per token of the Statement it quotes
+     */
+    public static double WORDS_PER_TOKEN = 2.5;
+
+    // Lexeme kinds
+    private static final int IDENT = 0;
+    private static final int INT = 1;
+    private static final int FLOAT = 2;
+    private static final int PUNCT = 3;
+    private static final int KEYWORD = 4;
+    private static final int END = 5;
+
+    // Expression types
+    private static final int T_INT = 0;
+    private static final int T_FLOAT = 1;
+    private static final int T_ERROR = 2;
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("bool", "break", "case", "char", "const",
+            "continue", "default", "do", "double", "else", "false", "float", "for", "if", "int", "long", "return",
+            "short", "signed", "static", "switch", "true", "unsigned", "void", "while"));
+    private static final Set<String> MODIFIERS = new HashSet<>(Arrays.asList("const", "signed", "static", "unsigned"));
+    private static final Set<String> TYPES = new HashSet<>(Arrays.asList("bool", "char", "double", "float", "int",
+            "long", "short", "void"));
+    private static final Set<String> ASSIGN = new HashSet<>(Arrays.asList("=", "+=", "-=", "*=", "/=", "%=", "&=",
+            "|=", "^=", "<<=", ">>="));
+    private static final Set<String> INTEGER_ONLY = new HashSet<>(Arrays.asList("%", "&", "|", "^", "<<", ">>"));
+    private static final Map<String, Integer> PRECEDENCE = new HashMap<>();
+    private static final String[] OPERATORS = {"<<=", ">>=", "++", "--", "==", "!=", "<=", ">=", "&&", "||", "<<",
+        ">>", "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", "->", "::"};
+
+    static {
+        String[][] levels = {{"||"}, {"&&"}, {"|"}, {"^"}, {"&"}, {"==", "!="}, {"<", ">", "<=", ">="},
+        {"<<", ">>"}, {"+", "-"}, {"*", "/", "%"}};
+        for (int i = 0; i < levels.length; i++) {
+            for (String op : levels[i]) {
+                PRECEDENCE.put(op, i + 1);
+            }
+        }
+    }
+
+    // Dummy constructor to prevent object instances
+    private SyntaxChecker() {
+    }
+
+    /**
+     * Estimate the number of diagnostics gcc reports for each Statement
+     *
+     * @param program the Program to check
+     * @return the count for each Statement, in order
+     */
+    public static int[] check(Program program) {
+        return new Parser(program.list()).parse();
+    }
+
+    /**
+     * Estimate the number of diagnostics gcc reports for a Statement on its
+     * own in main()
+     *
+     * @param statement the Statement to check
+     * @return the diagnostic count
+     */
+    public static int check(Statement statement) {
+        ArrayList<Statement> list = new ArrayList<>();
+        list.add(statement);
+        return new Parser(list).parse()[0];
+    }
+
+    /**
+     * Estimate the number of words in gcc's error output for a Program
+     *
+     * @param program the Program to check
+     * @return the estimated error-word count
+     */
+    public static double estimateErrorWords(Program program) {
+        return estimate(program, check(program));
+    }
+
+    /**
+     * Turn diagnostic counts into an error-word estimate
+     */
+    private static double estimate(Program program, int[] diagnostics) {
+        double words = 0;
+        for (int i = 0; i < diagnostics.length; i++) {
+            words += diagnostics[i] * (WORDS_PER_DIAGNOSTIC + WORDS_PER_TOKEN * program.list().get(i).length());
+        }
+        return words > 0 ? words + WORDS_PER_PROGRAM : 0;
+    }
+
+    /**
+     * A variable in scope
+     */
+    private static final class Variable {
+
+        final int type;
+        final boolean constant;
+
+        Variable(int type, boolean constant) {
+            this.type = type;
+            this.constant = constant;
+        }
+    }
+
+    /**
+     * The value of a sub-expression: its type, and whether it can be assigned
+     */
+    private static final class Value {
+
+        static final Value ERROR = new Value(T_ERROR, true, false);
+
+        final int type;
+        final boolean lvalue;
+        final boolean constant;
+
+        Value(int type, boolean lvalue, boolean constant) {
+            this.type = type;
+            this.lvalue = lvalue;
+            this.constant = constant;
+        }
+
+        static Value of(int type) {
+            return new Value(type, false, false);
+        }
+    }
+
+    /**
+     * One pass over the lexemes of a Program, as the body of main()
+     */
+    private static final class Parser {
+
+        private final List<String> text = new ArrayList<>();
+        private final List<Integer> kind = new ArrayList<>();
+        private final List<Integer> owner = new ArrayList<>();
+        private final int[] diagnostics;
+        private int pos = 0;
+
+        private final Deque<Map<String, Variable>> scopes = new ArrayDeque<>();
+        private final Deque<Set<String>> cases = new ArrayDeque<>();
+        private int loops = 0;
+
+        Parser(List<Statement> statements) {
+            diagnostics = new int[Math.max(statements.size(), 1)];
+            for (int s = 0; s < statements.size(); s++) {
+                for (String token : statements.get(s).list()) {
+                    lex(token, s);
+                }
+            }
+            // The closing brace of main(), then the end of input
+            int last = diagnostics.length - 1;
+            add("}", PUNCT, last);
+            add("", END, last);
+        }
+
+        /**
+         * Split a token into C lexemes, e.g. "--18.59" into "--" and "18.59"
+         */
+        private void lex(String token, int s) {
+            int i = 0;
+            int n = token.length();
+            while (i < n) {
+                char c = token.charAt(i);
+                int j = i + 1;
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                } else if (c == '\'') {
+                    while (j < n && token.charAt(j) != '\'') {
+                        j += token.charAt(j) == '\\' ? 2 : 1;
+                    }
+                    j = Math.min(j + 1, n);
+                    add(token.substring(i, j), INT, s);
+                } else if (Character.isDigit(c) || (c == '.' && j < n && Character.isDigit(token.charAt(j)))) {
+                    boolean floating = false;
+                    while (j < n && (Character.isLetterOrDigit(token.charAt(j)) || token.charAt(j) == '.')) {
+                        floating |= token.charAt(j) == '.' || token.charAt(j) == 'e';
+                        j++;
+                    }
+                    add(token.substring(i, j), floating || c == '.' ? FLOAT : INT, s);
+                } else if (Character.isLetter(c) || c == '_') {
+                    while (j < n && (Character.isLetterOrDigit(token.charAt(j)) || token.charAt(j) == '_')) {
+                        j++;
+                    }
+                    String word = token.substring(i, j);
+                    add(word, KEYWORDS.contains(word) ? KEYWORD : IDENT, s);
+                } else {
+                    String op = String.valueOf(c);
+                    for (String longer : OPERATORS) {
+                        if (token.startsWith(longer, i)) {
+                            op = longer;
+                            break;
+                        }
+                    }
+                    j = i + op.length();
+                    add(op, PUNCT, s);
+                }
+                i = j;
+            }
+        }
+
+        private void add(String t, int k, int s) {
+            text.add(t);
+            kind.add(k);
+            owner.add(s);
+        }
+
+        /**
+         * Parse main() and return the diagnostics charged to each Statement
+         */
+        int[] parse() {
+            scopes.push(new HashMap<>());
+            while (!at("}") && !atEnd()) {
+                statement();
+            }
+            expect("}");
+
+            // An early '}' closed main(), so the rest is at global scope
+            while (!atEnd()) {
+                diag();
+                sync();
+                if (at("}")) {
+                    pos++;
+                }
+            }
+            return diagnostics;
+        }
+
+        // Lexeme helpers
+        private String peek() {
+            return text.get(pos);
+        }
+
+        private int peekKind() {
+            return kind.get(pos);
+        }
+
+        private boolean at(String t) {
+            return text.get(pos).equals(t) && kind.get(pos) != END;
+        }
+
+        private boolean atEnd() {
+            return kind.get(pos) == END;
+        }
+
+        private void diag() {
+            diagnostics[owner.get(pos)]++;
+        }
+
+        private boolean expect(String t) {
+            if (at(t)) {
+                pos++;
+                return true;
+            }
+            diag();
+            return false;
+        }
+
+        /**
+         * Panic-mode recovery: skip to the end of the statement
+         */
+        private void sync() {
+            int depth = 0;
+            while (!atEnd()) {
+                String t = peek();
+                if (t.equals("(") || t.equals("{") || t.equals("[")) {
+                    depth++;
+                } else if (t.equals(")") || t.equals("]")) {
+                    depth = Math.max(depth - 1, 0);
+                } else if (t.equals("}")) {
+                    if (depth == 0) {
+                        return;
+                    }
+                    depth--;
+                } else if (t.equals(";") && depth == 0) {
+                    pos++;
+                    return;
+                }
+                pos++;
+            }
+        }
+
+        // Scopes
+        private Variable lookup(String name) {
+            for (Map<String, Variable> scope : scopes) {
+                Variable v = scope.get(name);
+                if (v != null) {
+                    return v;
+                }
+            }
+            return null;
+        }
+
+        private void block() {
+            pos++;
+            scopes.push(new HashMap<>());
+            while (!at("}") && !atEnd()) {
+                statement();
+            }
+            if (atEnd()) {
+                // "expected '}' at end of input", and a note for the '{'
+                diag();
+                diag();
+            } else {
+                pos++;
+            }
+            scopes.pop();
+        }
+
+        private boolean atDeclaration() {
+            return MODIFIERS.contains(peek()) || (TYPES.contains(peek()) && peekKind() == KEYWORD);
+        }
+
+        private void statement() {
+            if (at("}") || atEnd()) {
+                // "expected primary-expression before '}'"
+                diag();
+                return;
+            }
+            int start = pos;
+            String t = peek();
+            switch (t) {
+                case "{":
+                    block();
+                    break;
+                case "if":
+                    pos++;
+                    condition();
+                    statement();
+                    if (at("else")) {
+                        pos++;
+                        statement();
+                    }
+                    break;
+                case "else":
+                    // "'else' without a previous 'if'"
+                    diag();
+                    pos++;
+                    statement();
+                    break;
+                case "while":
+                    pos++;
+                    condition();
+                    loops++;
+                    statement();
+                    loops--;
+                    break;
+                case "do":
+                    pos++;
+                    loops++;
+                    statement();
+                    loops--;
+                    if (expect("while")) {
+                        condition();
+                        terminate();
+                    } else {
+                        sync();
+                    }
+                    break;
+                case "for":
+                    forLoop();
+                    break;
+                case "switch":
+                    pos++;
+                    if (condition() == T_FLOAT) {
+                        diag();
+                    }
+                    cases.push(new HashSet<>());
+                    statement();
+                    cases.pop();
+                    break;
+                case "case":
+                    pos++;
+                    if (cases.isEmpty()) {
+                        diag();
+                    }
+                    int caseAt = pos;
+                    Value label = conditional();
+                    if (label.type == T_FLOAT || (label.lvalue && label.type != T_ERROR)) {
+                        // not an integer constant
+                        diag();
+                    } else if (!cases.isEmpty() && !cases.peek().add(String.join(" ", text.subList(caseAt, pos)))) {
+                        // "duplicate case value", and a note for the first
+                        diag();
+                        diag();
+                    }
+                    label();
+                    break;
+                case "default":
+                    pos++;
+                    if (cases.isEmpty()) {
+                        diag();
+                    }
+                    label();
+                    break;
+                case "break":
+                    pos++;
+                    if (loops == 0 && cases.isEmpty()) {
+                        diag();
+                    }
+                    terminate();
+                    break;
+                case "continue":
+                    pos++;
+                    if (loops == 0) {
+                        diag();
+                    }
+                    terminate();
+                    break;
+                case "return":
+                    pos++;
+                    if (at(";")) {
+                        // "return-statement with no value"
+                        diag();
+                    } else {
+                        expression();
+                    }
+                    terminate();
+                    break;
+                case ";":
+                    pos++;
+                    break;
+                default:
+                    if (atDeclaration()) {
+                        declaration();
+                    } else {
+                        expression();
+                        terminate();
+                    }
+                    break;
+            }
+            if (pos == start) {
+                // Nothing made sense, skip the lexeme
+                diag();
+                pos++;
+            }
+        }
+
+        private void label() {
+            if (expect(":")) {
+                if (at("}")) {
+                    // a label needs a statement after it
+                    diag();
+                }
+            } else {
+                sync();
+            }
+        }
+
+        private void terminate() {
+            if (!expect(";")) {
+                sync();
+            }
+        }
+
+        private int condition() {
+            if (!expect("(")) {
+                sync();
+                return T_ERROR;
+            }
+            int type = expression().type;
+            if (!expect(")")) {
+                sync();
+            }
+            return type;
+        }
+
+        private void forLoop() {
+            pos++;
+            if (!expect("(")) {
+                sync();
+                return;
+            }
+            scopes.push(new HashMap<>());
+            if (atDeclaration()) {
+                declaration();
+            } else {
+                if (!at(";")) {
+                    expression();
+                }
+                expect(";");
+            }
+            if (!at(";")) {
+                expression();
+            }
+            expect(";");
+            if (!at(")")) {
+                expression();
+            }
+            if (!expect(")")) {
+                sync();
+            }
+            loops++;
+            statement();
+            loops--;
+            scopes.pop();
+        }
+
+        private void declaration() {
+            boolean constant = false;
+            int type = T_INT;
+            int types = 0;
+            boolean voided = false;
+            while (atDeclaration()) {
+                String t = peek();
+                constant |= t.equals("const");
+                if (TYPES.contains(t)) {
+                    if (t.equals("double") || t.equals("float")) {
+                        type = T_FLOAT;
+                    }
+                    voided |= t.equals("void");
+                    // "long long" and "long int" are fine, most pairs are not
+                    if (types > 0 && !(t.equals("long") || t.equals("int"))) {
+                        diag();
+                    }
+                    types++;
+                }
+                pos++;
+            }
+            if (types == 0) {
+                // modifiers alone default to int, which g++ rejects
+                diag();
+            }
+            while (true) {
+                if (peekKind() != IDENT) {
+                    diag();
+                    sync();
+                    return;
+                }
+                String name = peek();
+                if (scopes.peek().containsKey(name)) {
+                    // "redeclaration", and a note for the first
+                    diag();
+                    diag();
+                }
+                if (voided) {
+                    diag();
+                }
+                scopes.peek().put(name, new Variable(type, constant));
+                pos++;
+                if (at("=")) {
+                    pos++;
+                    assignment();
+                } else if (constant) {
+                    // "uninitialized 'const'"
+                    diag();
+                }
+                if (!at(",")) {
+                    break;
+                }
+                pos++;
+            }
+            terminate();
+        }
+
+        private Value expression() {
+            Value v = assignment();
+            while (at(",")) {
+                pos++;
+                v = assignment();
+            }
+            return v;
+        }
+
+        private Value assignment() {
+            Value lhs = conditional();
+            if (ASSIGN.contains(peek()) && peekKind() == PUNCT) {
+                if (!lhs.lvalue || lhs.constant) {
+                    diag();
+                } else if (lhs.type == T_FLOAT && !peek().equals("=") && INTEGER_ONLY.contains(peek().substring(0, peek().length() - 1))) {
+                    diag();
+                }
+                pos++;
+                assignment();
+                return Value.of(lhs.type);
+            }
+            return lhs;
+        }
+
+        private Value conditional() {
+            Value c = binary(1);
+            if (at("?")) {
+                pos++;
+                Value a = expression();
+                if (!expect(":")) {
+                    return Value.ERROR;
+                }
+                Value b = conditional();
+                return Value.of(Math.max(a.type, b.type));
+            }
+            return c;
+        }
+
+        private Value binary(int level) {
+            Value lhs = unary();
+            while (true) {
+                Integer p = PRECEDENCE.get(peek());
+                if (p == null || p < level || peekKind() != PUNCT) {
+                    return lhs;
+                }
+                String op = peek();
+                pos++;
+                if (op.equals("/") || op.equals("%")) {
+                    if (peekKind() == INT && peek().matches("0+")) {
+                        // "division by zero" warning
+                        diag();
+                    }
+                }
+                Value rhs = binary(p + 1);
+                if (lhs.type == T_ERROR || rhs.type == T_ERROR) {
+                    lhs = Value.of(T_ERROR);
+                } else if (INTEGER_ONLY.contains(op) && (lhs.type == T_FLOAT || rhs.type == T_FLOAT)) {
+                    // "invalid operands to binary expression"
+                    diag();
+                    lhs = Value.of(T_ERROR);
+                } else if (p <= 2 || p == 6 || p == 7) {
+                    lhs = Value.of(T_INT);
+                } else {
+                    lhs = Value.of(Math.max(lhs.type, rhs.type));
+                }
+            }
+        }
+
+        private Value unary() {
+            String t = peek();
+            if (peekKind() == PUNCT && (t.equals("-") || t.equals("+") || t.equals("!") || t.equals("~"))) {
+                pos++;
+                Value v = unary();
+                if (t.equals("~") && v.type == T_FLOAT) {
+                    diag();
+                }
+                return Value.of(t.equals("!") ? T_INT : v.type);
+            }
+            if (peekKind() == PUNCT && (t.equals("++") || t.equals("--"))) {
+                pos++;
+                Value v = unary();
+                if (!v.lvalue || v.constant) {
+                    // "lvalue required as increment operand"
+                    diag();
+                    return Value.of(v.type);
+                }
+                return v;
+            }
+            Value v = primary();
+            while (peekKind() == PUNCT && (at("++") || at("--"))) {
+                if (!v.lvalue || v.constant) {
+                    diag();
+                }
+                pos++;
+                v = Value.of(v.type);
+            }
+            return v;
+        }
+
+        private Value primary() {
+            String t = peek();
+            switch (peekKind()) {
+                case IDENT:
+                    Variable v = lookup(t);
+                    if (v == null) {
+                        // "'x' was not declared in this scope", once per scope
+                        diag();
+                        scopes.peek().put(t, new Variable(T_ERROR, false));
+                    }
+                    pos++;
+                    return v == null ? Value.ERROR : new Value(v.type, true, v.constant);
+                case INT:
+                case FLOAT:
+                    int literal = peekKind();
+                    pos++;
+                    return Value.of(literal == FLOAT ? T_FLOAT : T_INT);
+                case KEYWORD:
+                    if (t.equals("true") || t.equals("false")) {
+                        pos++;
+                        return Value.of(T_INT);
+                    }
+                    break;
+                case PUNCT:
+                    if (t.equals("(")) {
+                        pos++;
+                        Value inner = expression();
+                        if (!expect(")")) {
+                            return Value.ERROR;
+                        }
+                        return inner;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            // "expected primary-expression before ..."
+            diag();
+            return Value.ERROR;
+        }
+    }
+
+    /**
+     * Calibration report. Builds a corpus of random and mutated Programs,
+     * compiles each one, and compares estimateErrorWords() to gcc's error-word
+     * count. Prints the correlation of estimate and truth and how many
+     * Programs each skip threshold would keep away from gcc, both with the
+     * coefficients the estimate uses at run time, so the thresholds can go
+     * straight into Fitness.SYNTAX_SKIP. Also prints a least-squares fit of
+     * the coefficients for this corpus, which is only a suggestion: set the
+     * fields from it and rerun to see its thresholds.
+     *
+     * java geneticcode.SyntaxChecker [programs] [statements]
+     *
+     * @param args the corpus size and the number of Statements per Program
+     * @throws IOException if gcc cannot be run
+     * @throws InterruptedException if interrupted while waiting for gcc
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        RandomGenerator r = Rng.get();
+
+        List<Program> corpus = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Program p = Factory.makeRandomProgram(1 + r.nextInt(k));
+            // Break some of them the way the mutation operators do
+            if (r.nextBoolean()) {
+                Operator.mutate(p);
+            }
+            if (r.nextInt(4) == 0) {
+                p.getRandomStatement().swapTokens(1 + r.nextInt(3));
+            }
+            if (r.nextInt(4) == 0) {
+                p.getRandomStatement().addRandomTokens(1 + r.nextInt(3));
+            }
+            corpus.add(p);
+        }
+
+        // Features: header, diagnostics, diagnostics * tokens
+        double[][] x = new double[n][3];
+        double[] y = new double[n];
+        double[] estimate = new double[n];
+        for (int i = 0; i < n; i++) {
+            Program p = corpus.get(i);
+            int[] d = check(p);
+            estimate[i] = estimate(p, d);
+            for (int s = 0; s < d.length; s++) {
+                x[i][1] += d[s];
+                x[i][2] += d[s] * p.list().get(s).length();
+            }
+            x[i][0] = x[i][1] > 0 ? 1 : 0;
+            y[i] = Compiler.compile(p.toString()).getErrorWords();
+        }
+
+        // Least squares by the normal equations
+        double[][] a = new double[3][4];
+        for (int i = 0; i < n; i++) {
+            for (int row = 0; row < 3; row++) {
+                for (int col = 0; col < 3; col++) {
+                    a[row][col] += x[i][row] * x[i][col];
+                }
+                a[row][3] += x[i][row] * y[i];
+            }
+        }
+        double[] fit = solve(a);
+
+        System.out.println("Corpus: " + n + " programs of 1-" + k + " statements");
+        System.out.println(String.format("Using: WORDS_PER_PROGRAM = %.2f, WORDS_PER_DIAGNOSTIC = %.2f, WORDS_PER_TOKEN = %.2f",
+                WORDS_PER_PROGRAM, WORDS_PER_DIAGNOSTIC, WORDS_PER_TOKEN));
+        System.out.println(String.format("Pearson r = %.3f, Spearman rho = %.3f",
+                pearson(estimate, y), pearson(ranks(estimate), ranks(y))));
+        if (fit != null) {
+            double[] fitted = new double[n];
+            for (int i = 0; i < n; i++) {
+                fitted[i] = fit[0] * x[i][0] + fit[1] * x[i][1] + fit[2] * x[i][2];
+            }
+            System.out.println(String.format("Fit:   WORDS_PER_PROGRAM = %.2f, WORDS_PER_DIAGNOSTIC = %.2f, WORDS_PER_TOKEN = %.2f"
+                    + " (Pearson r = %.3f, not applied)", fit[0], fit[1], fit[2], pearson(fitted, y)));
+        }
+        int clean = 0;
+        int missed = 0;
+        for (int i = 0; i < n; i++) {
+            if (x[i][1] == 0) {
+                clean++;
+                if (y[i] > 0) {
+                    missed++;
+                }
+            }
+        }
+        System.out.println("Predicted clean: " + clean + ", of which gcc complained about " + missed);
+
+        // How much a skip threshold saves, and how wrong the skipped are
+        System.out.println();
+        System.out.println(String.format("%10s %8s %14s %14s", "threshold", "skipped", "min actual", "mean actual"));
+        double[] sorted = estimate.clone();
+        Arrays.sort(sorted);
+        for (double q : new double[]{0.5, 0.75, 0.9, 0.95, 0.99}) {
+            double threshold = sorted[(int) Math.min(n - 1, q * n)];
+            int skipped = 0;
+            double min = Double.MAX_VALUE;
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                if (estimate[i] > threshold) {
+                    skipped++;
+                    min = Math.min(min, y[i]);
+                    sum += y[i];
+                }
+            }
+            System.out.println(String.format("%10.0f %8d %14.0f %14.1f", threshold, skipped,
+                    skipped > 0 ? min : 0, skipped > 0 ? sum / skipped : 0));
+        }
+    }
+
+    /**
+     * Gaussian elimination on an augmented 3x4 matrix
+     */
+    private static double[] solve(double[][] a) {
+        int m = a.length;
+        for (int col = 0; col < m; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < m; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(a[pivot][col]) < 1e-9) {
+                return null;
+            }
+            double[] tmp = a[col];
+            a[col] = a[pivot];
+            a[pivot] = tmp;
+            for (int row = 0; row < m; row++) {
+                if (row != col) {
+                    double f = a[row][col] / a[col][col];
+                    for (int c = col; c <= m; c++) {
+                        a[row][c] -= f * a[col][c];
+                    }
+                }
+            }
+        }
+        double[] x = new double[m];
+        for (int i = 0; i < m; i++) {
+            x[i] = a[i][m] / a[i][i];
+        }
+        return x;
+    }
+
+    /**
+     * Pearson correlation of two samples
+     */
+    static double pearson(double[] a, double[] b) {
+        int n = a.length;
+        double ma = 0;
+        double mb = 0;
+        for (int i = 0; i < n; i++) {
+            ma += a[i] / n;
+            mb += b[i] / n;
+        }
+        double cov = 0;
+        double va = 0;
+        double vb = 0;
+        for (int i = 0; i < n; i++) {
+            cov += (a[i] - ma) * (b[i] - mb);
+            va += (a[i] - ma) * (a[i] - ma);
+            vb += (b[i] - mb) * (b[i] - mb);
+        }
+        return va == 0 || vb == 0 ? 0 : cov / Math.sqrt(va * vb);
+    }
+
+    /**
+     * Ranks of a sample, ties get the average rank
+     */
+    static double[] ranks(double[] a) {
+        int n = a.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Double.compare(a[i], a[j]));
+        double[] rank = new double[n];
+        for (int i = 0; i < n;) {
+            int j = i;
+            while (j + 1 < n && a[order[j + 1]] == a[order[i]]) {
+                j++;
+            }
+            for (int t = i; t <= j; t++) {
+                rank[order[t]] = (i + j) / 2.0;
+            }
+            i = j + 1;
+        }
+        return rank;
+    }
+}
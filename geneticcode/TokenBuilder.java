@@ -0,0 +1,98 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Collects the tokens of a Statement being generated, as ids from the
+ * Symbols table.
+ *
+ * The Factory appends every production to one builder instead of building
+ * and joining lists of Strings. The TokenList of the new Statement then takes
+ * over the id array as it is when the array is mostly full, and the builder
+ * starts a new small one. A mostly empty array, left large by some longer
+ * Statement, is copied instead, so it never pads every later Statement.
+ *
+ * Not thread safe, so the Factory keeps one per thread.
+ *
+ */
+final class TokenBuilder {
+
+    // The size of a new array, a little above the mean Statement
+    private static final int CAPACITY = 32;
+
+    private int[] ids;
+    private int size = 0;
+
+    /**
+     * Construct an empty builder
+     */
+    TokenBuilder() {
+        ids = new int[CAPACITY];
+    }
+
+    /**
+     * Append a token
+     *
+     * @param id the id of the token
+     */
+    void add(int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        ids[size++] = id;
+    }
+
+    /**
+     * Append a token, interning it if it is new
+     *
+     * @param token the token
+     */
+    void add(String token) {
+        add(Symbols.id(token));
+    }
+
+    /**
+     * Get the number of tokens appended since the last take
+     *
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Hand the tokens over to a new list, and start again empty
+     *
+     * @return the list, holding the builder's array or a trimmed copy
+     */
+    TokenList take() {
+        TokenList list;
+        if (size * 2 >= ids.length) {
+            list = new TokenList(ids, size);
+            ids = new int[CAPACITY];
+        } else {
+            list = new TokenList(Arrays.copyOf(ids, size), size);
+        }
+        size = 0;
+        return list;
+    }
+
+    /**
+     * Copy the tokens out as Strings, and start again empty
+     *
+     * @return the tokens
+     */
+    ArrayList<String> takeList() {
+        ArrayList<String> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(Symbols.name(ids[i]));
+        }
+        size = 0;
+        return tokens;
+    }
+}
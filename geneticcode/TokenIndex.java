@@ -0,0 +1,134 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An inverted index of the Statements of a Program: each token id maps to the
+ * set of positions of the Statements holding it.
+ *
+ * The StatementList builds it on the first query and keeps it up to date from
+ * then on, so a query only costs as much as its hits. Inserting or removing a
+ * Statement moves the positions after it.
+ *
+ */
+class TokenIndex {
+
+    private final HashMap<Integer, BitSet> positions = new HashMap<>();
+
+    /**
+     * Index the given Statements
+     *
+     * @param statements the Statements, by position
+     */
+    TokenIndex(List<Statement> statements) {
+        for (int i = 0; i < statements.size(); i++) {
+            put(i, statements.get(i).list());
+        }
+    }
+
+    /**
+     * Get the positions of the Statements holding a token
+     *
+     * @param token the id of the token
+     * @return the positions, or null if there are none. Must not be changed.
+     */
+    BitSet get(int token) {
+        return positions.get(token);
+    }
+
+    /**
+     * Record a token at a position
+     *
+     * @param token the id of the token
+     * @param pos the position of the Statement
+     */
+    void set(int token, int pos) {
+        positions.computeIfAbsent(token, t -> new BitSet()).set(pos);
+    }
+
+    /**
+     * Forget a token at a position
+     *
+     * @param token the id of the token
+     * @param pos the position of the Statement
+     */
+    void clear(int token, int pos) {
+        BitSet bits = positions.get(token);
+        if (bits != null) {
+            bits.clear(pos);
+            if (bits.isEmpty()) {
+                positions.remove(token);
+            }
+        }
+    }
+
+    /**
+     * Record every token of a Statement at its position
+     *
+     * @param pos the position of the Statement
+     * @param tokens the Statement's tokens
+     */
+    void put(int pos, TokenList tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            set(tokens.id(i), pos);
+        }
+    }
+
+    /**
+     * Forget every token of a Statement at its position
+     *
+     * @param pos the position of the Statement
+     * @param tokens the Statement's tokens
+     */
+    void clear(int pos, TokenList tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            clear(tokens.id(i), pos);
+        }
+    }
+
+    /**
+     * Make room for a Statement inserted at a position, moving the positions
+     * from there on up by one
+     *
+     * @param pos the position of the new Statement
+     */
+    void insert(int pos) {
+        for (BitSet bits : positions.values()) {
+            shift(bits, pos, pos + 1);
+        }
+    }
+
+    /**
+     * Close the gap of a Statement removed from a position, moving the
+     * positions after it down by one. Its tokens must be cleared first.
+     *
+     * @param pos the position of the removed Statement
+     */
+    void delete(int pos) {
+        for (BitSet bits : positions.values()) {
+            shift(bits, pos + 1, pos);
+        }
+    }
+
+    /**
+     * Move the bits from one position on to start at another, costing as
+     * much as the bits moved
+     */
+    private static void shift(BitSet bits, int from, int to) {
+        int length = bits.length();
+        if (length <= from) {
+            return;
+        }
+        BitSet tail = bits.get(from, length);
+        bits.clear(Math.min(from, to), length);
+        for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i + 1)) {
+            bits.set(to + i);
+        }
+    }
+}
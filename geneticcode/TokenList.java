@@ -0,0 +1,539 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The tokens of a Statement, held as ids from the Symbols table in a growable
+ * int array, keeping a running character count as they change.
+ *
+ * Every change is passed on to the StatementList of the Program that owns the
+ * Statement, so the Program's totals stay current too. Reordering the tokens
+ * changes no totals, so it only marks the rendered text as stale.
+ *
+ * Copies share the id array until one of them changes, which copies it first,
+ * so copying a Statement costs the same however long it is.
+ *
+ * The rendered text is kept until the next change. A 64-bit polynomial hash
+ * of the tokens, the sum of hash(token i) * B^i, is kept up to date: adding to
+ * the end, replacing and swapping tokens adjust it in constant time, other
+ * changes rehash the list, which costs no more than moving the ids.
+ *
+ * The Brackets summary of the tokens is kept the same way: adding to the end
+ * extends it, other changes drop it, and it is folded again when next asked
+ * for.
+ *
+ */
+class TokenList implements Iterable<String> {
+
+    // The Program's Statements, if the Statement belongs to one, and the
+    // number of places it fills in them
+    StatementList owner;
+    int uses = 0;
+
+    private int[] ids;
+    // Set while another list may be reading the same id array
+    private boolean shared = false;
+    private int size = 0;
+    private int chars = 0;
+    // The rendered Statement, or null if it changed since
+    private String text;
+    // Sum of Symbols.hash(ids[i]) * BASE^i
+    private long hash = 0;
+    // The brackets of the tokens, or null if they changed since
+    private Brackets brackets = Brackets.NONE;
+
+    // Odd, so powers never reach zero
+    private static final long BASE = 0x9e3779b97f4a7c15L;
+    private static final long[] POWERS = new long[64];
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * BASE;
+        }
+    }
+
+    /**
+     * Construct an empty list
+     */
+    TokenList() {
+        ids = new int[8];
+    }
+
+    /**
+     * Construct a list holding the given tokens
+     *
+     * @param tokens the tokens to intern
+     */
+    TokenList(Collection<String> tokens) {
+        ids = new int[Math.max(8, tokens.size())];
+        for (String t : tokens) {
+            int id = Symbols.id(t);
+            ids[size++] = id;
+            chars += Symbols.length(id);
+        }
+        rehash();
+        brackets = null;
+    }
+
+    /**
+     * Construct a list taking over an array of ids, which the caller must
+     * not use any more
+     *
+     * @param ids the ids, of which the first size are the tokens
+     * @param size the number of tokens
+     */
+    TokenList(int[] ids, int size) {
+        this.ids = ids;
+        this.size = size;
+        for (int i = 0; i < size; i++) {
+            chars += Symbols.length(ids[i]);
+        }
+        rehash();
+        brackets = null;
+    }
+
+    /**
+     * Construct a copy of another list, not owned by any Program
+     *
+     * @param other the list to copy
+     */
+    TokenList(TokenList other) {
+        ids = other.ids;
+        shared = true;
+        other.shared = true;
+        size = other.size;
+        chars = other.chars;
+        hash = other.hash;
+        brackets = other.brackets;
+    }
+
+    /**
+     * Get the number of tokens
+     *
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Check if there are no tokens
+     *
+     * @return true if empty
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Count the characters across the tokens
+     *
+     * @return the character count
+     */
+    int characterCount() {
+        return chars;
+    }
+
+    /**
+     * Get the structural hash of the tokens. Lists with the same tokens in
+     * the same order have the same hash, in any run.
+     *
+     * @return the 64-bit hash
+     */
+    long hash64() {
+        // Mix in the size, so trailing tokens that hash to nothing still count
+        return Symbols.mix(hash + size);
+    }
+
+    /**
+     * Render the tokens, each followed by a space, reusing the last rendering
+     * if nothing changed since
+     *
+     * @return the Statement text
+     */
+    String render() {
+        String str = text;
+        if (str == null) {
+            StringBuilder sb = new StringBuilder(chars + size);
+            for (int i = 0; i < size; i++) {
+                sb.append(Symbols.name(ids[i])).append(' ');
+            }
+            str = sb.toString();
+            text = str;
+        }
+        return str;
+    }
+
+    /**
+     * Get the summary of the brackets of the tokens, folding it again if
+     * they changed since
+     *
+     * @return the summary
+     */
+    Brackets brackets() {
+        Brackets b = brackets;
+        if (b == null) {
+            b = Brackets.NONE;
+            for (int i = 0; i < size && b != Brackets.MISMATCH; i++) {
+                b = b.then(Symbols.brackets(ids[i]));
+            }
+            brackets = b;
+        }
+        return b;
+    }
+
+    /**
+     * Get the id of the token at an index
+     *
+     * @param index the index
+     * @return the id
+     */
+    int id(int index) {
+        check(index, size);
+        return ids[index];
+    }
+
+    /**
+     * Get the token at an index
+     *
+     * @param index the index
+     * @return the token
+     */
+    String get(int index) {
+        return Symbols.name(id(index));
+    }
+
+    /**
+     * Find the first occurrence of a token
+     *
+     * @param id the id of the token
+     * @return its index, or -1
+     */
+    int indexOf(int id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Count the occurrences of a token
+     *
+     * @param id the id of the token
+     * @return the number of times it occurs
+     */
+    int count(int id) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Add a token to the end
+     *
+     * @param id the id of the token
+     */
+    void add(int id) {
+        add(size, id);
+    }
+
+    /**
+     * Insert a token
+     *
+     * @param index where to insert it, at most the size
+     * @param id the id of the token
+     */
+    void add(int index, int id) {
+        check(index, size + 1);
+        own(size + 1);
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        size++;
+        chars += Symbols.length(id);
+        Brackets b = null;
+        if (index == size - 1) {
+            hash += Symbols.hash(id) * power(index);
+            b = brackets == null ? null : brackets.then(Symbols.brackets(id));
+        } else {
+            rehash();
+        }
+        changed();
+        brackets = b;
+        if (owner != null) {
+            owner.tokenAdded(this, size - 1, id);
+        }
+    }
+
+    /**
+     * Insert several tokens
+     *
+     * @param index where to insert them, at most the size
+     * @param added the ids of the tokens
+     */
+    void addAll(int index, int[] added) {
+        check(index, size + 1);
+        own(size + added.length);
+        if (owner != null) {
+            owner.retract(this);
+        }
+        System.arraycopy(ids, index, ids, index + added.length, size - index);
+        System.arraycopy(added, 0, ids, index, added.length);
+        size += added.length;
+        for (int id : added) {
+            chars += Symbols.length(id);
+        }
+        rehash();
+        changed();
+        if (owner != null) {
+            owner.account(this);
+        }
+    }
+
+    /**
+     * Replace a token
+     *
+     * @param index the index
+     * @param id the id of the new token
+     * @return the id of the old token
+     */
+    int set(int index, int id) {
+        check(index, size);
+        own(size);
+        int old = ids[index];
+        ids[index] = id;
+        chars += Symbols.length(id) - Symbols.length(old);
+        hash += (Symbols.hash(id) - Symbols.hash(old)) * power(index);
+        changed();
+        if (owner != null) {
+            owner.tokenReplaced(this, old, id);
+        }
+        return old;
+    }
+
+    /**
+     * Remove a token
+     *
+     * @param index the index
+     * @return the id of the removed token
+     */
+    int remove(int index) {
+        check(index, size);
+        own(size);
+        int old = ids[index];
+        System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+        size--;
+        chars -= Symbols.length(old);
+        rehash();
+        changed();
+        if (owner != null) {
+            owner.tokenRemoved(this, size + 1, old);
+        }
+        return old;
+    }
+
+    /**
+     * Exchange two tokens
+     *
+     * @param i the index of one token
+     * @param j the index of another
+     */
+    void swap(int i, int j) {
+        check(i, size);
+        check(j, size);
+        own(size);
+        int t = ids[i];
+        ids[i] = ids[j];
+        ids[j] = t;
+        hash += (Symbols.hash(ids[i]) - Symbols.hash(ids[j])) * (power(i) - power(j));
+        changed();
+    }
+
+    /**
+     * Reverse the order of the tokens
+     */
+    void reverse() {
+        own(size);
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int t = ids[i];
+            ids[i] = ids[j];
+            ids[j] = t;
+        }
+        rehash();
+        changed();
+    }
+
+    /**
+     * Copy out the ids of a range of tokens
+     *
+     * @param low the lower index, inclusive
+     * @param high the upper index, exclusive
+     * @return the ids
+     */
+    int[] ids(int low, int high) {
+        return Arrays.copyOfRange(ids, low, high);
+    }
+
+    /**
+     * Copy the tokens into a list of Strings
+     *
+     * @return the tokens
+     */
+    ArrayList<String> toList() {
+        ArrayList<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(Symbols.name(ids[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Iterate over the tokens, without changing them
+     *
+     * @return an iterator
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public String next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return Symbols.name(ids[next++]);
+            }
+        };
+    }
+
+    /**
+     * Compare the tokens of two lists
+     *
+     * @param obj the other list
+     * @return true if they hold the same tokens in the same order
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TokenList)) {
+            return false;
+        }
+        TokenList other = (TokenList) obj;
+        return hash == other.hash && Arrays.equals(ids, 0, size, other.ids, 0, other.size);
+    }
+
+    /**
+     * Hash the tokens, consistent with equals
+     *
+     * @return the hashCode
+     */
+    @Override
+    public int hashCode() {
+        long h = hash64();
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Compute the polynomial hash from scratch
+     */
+    private void rehash() {
+        long h = 0;
+        long p = 1;
+        for (int i = 0; i < size; i++) {
+            h += Symbols.hash(ids[i]) * p;
+            p *= BASE;
+        }
+        hash = h;
+    }
+
+    /**
+     * Raise the base to a power, arithmetic wrapping at 64 bits
+     */
+    private static long power(int k) {
+        if (k < POWERS.length) {
+            return POWERS[k];
+        }
+        long result = 1;
+        long b = BASE;
+        for (; k > 0; k >>= 1) {
+            if ((k & 1) != 0) {
+                result *= b;
+            }
+            b *= b;
+        }
+        return result;
+    }
+
+    /**
+     * Make sure the id array is this list's own and can hold the given
+     * number of tokens, copying it if needed
+     */
+    private void own(int capacity) {
+        if (shared || capacity > ids.length) {
+            int length = ids.length;
+            if (capacity > length) {
+                length = Math.max(length * 2, capacity);
+            }
+            ids = Arrays.copyOf(ids, length);
+            shared = false;
+        }
+    }
+
+    /**
+     * Hand this list's place in the owner's totals over to another list,
+     * which takes its place in the Statement
+     *
+     * @param next the new list, not owned by any Program
+     */
+    void handOver(TokenList next) {
+        if (owner != null) {
+            owner.replaced(this, next);
+        }
+        next.owner = owner;
+        next.uses = uses;
+        owner = null;
+        uses = 0;
+    }
+
+    /**
+     * Drop the rendered text, here and in the owner
+     */
+    private void changed() {
+        text = null;
+        brackets = null;
+        if (owner != null) {
+            owner.changed();
+        }
+    }
+
+    /**
+     * Reject an index outside [0, limit)
+     */
+    private void check(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
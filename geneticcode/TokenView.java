@@ -0,0 +1,277 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * The tokens of a Statement as a list of Strings, which reads and writes the
+ * Statement's token ids as they are. What Statement.getTokens() returns.
+ *
+ * Changes go through the Statement's TokenList, so they reach the running
+ * totals of the Program that holds the Statement, and copies of the
+ * Statement that still share its ids are not affected.
+ *
+ * It is an ArrayList only because getTokens() always returned one. Its own
+ * array stays empty, and every method that would use it works on the
+ * Statement's tokens instead.
+ *
+ */
+class TokenView extends ArrayList<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Live live;
+
+    /**
+     * Construct a view of a Statement's tokens
+     *
+     * @param statement the Statement
+     */
+    TokenView(Statement statement) {
+        live = new Live(statement);
+    }
+
+    @Override
+    public int size() {
+        return live.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return live.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return live.indexOf(o) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return live.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return live.lastIndexOf(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return live.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return live.toArray(a);
+    }
+
+    @Override
+    public String get(int index) {
+        return live.get(index);
+    }
+
+    @Override
+    public String set(int index, String token) {
+        return live.set(index, token);
+    }
+
+    @Override
+    public boolean add(String token) {
+        return live.add(token);
+    }
+
+    @Override
+    public void add(int index, String token) {
+        live.add(index, token);
+    }
+
+    @Override
+    public String remove(int index) {
+        return live.remove(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return live.remove(o);
+    }
+
+    @Override
+    public void clear() {
+        live.clear();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends String> c) {
+        return live.addAll(c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends String> c) {
+        return live.addAll(index, c);
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        live.subList(fromIndex, toIndex).clear();
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        return live.containsAll(c);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return live.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return live.retainAll(c);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super String> filter) {
+        return live.removeIf(filter);
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<String> operator) {
+        live.replaceAll(operator);
+    }
+
+    @Override
+    public void sort(Comparator<? super String> c) {
+        live.sort(c);
+    }
+
+    @Override
+    public void forEach(Consumer<? super String> action) {
+        live.forEach(action);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return live.iterator();
+    }
+
+    @Override
+    public ListIterator<String> listIterator() {
+        return live.listIterator();
+    }
+
+    @Override
+    public ListIterator<String> listIterator(int index) {
+        return live.listIterator(index);
+    }
+
+    @Override
+    public List<String> subList(int fromIndex, int toIndex) {
+        return live.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public Spliterator<String> spliterator() {
+        return live.spliterator();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || live.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return live.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return live.toString();
+    }
+
+    /**
+     * Copy the tokens, as cloning an ArrayList does
+     *
+     * @return a plain list of the tokens, not tied to the Statement
+     */
+    @Override
+    public Object clone() {
+        return new ArrayList<>(live);
+    }
+
+    /**
+     * The list the view forwards to. Reads and writes the tokens of whatever
+     * TokenList the Statement holds, since setTokens() replaces it.
+     */
+    private static class Live extends AbstractList<String> implements RandomAccess {
+
+        private final Statement statement;
+
+        Live(Statement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public int size() {
+            return statement.list().size();
+        }
+
+        @Override
+        public String get(int index) {
+            return statement.list().get(index);
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return o instanceof String ? statement.list().indexOf(Symbols.find((String) o)) : -1;
+        }
+
+        @Override
+        public String set(int index, String token) {
+            return Symbols.name(statement.list().set(index, Symbols.id(token)));
+        }
+
+        @Override
+        public void add(int index, String token) {
+            statement.list().add(index, Symbols.id(token));
+            modCount++;
+        }
+
+        @Override
+        public String remove(int index) {
+            String old = Symbols.name(statement.list().remove(index));
+            modCount++;
+            return old;
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends String> c) {
+            Objects.checkIndex(index, size() + 1);
+            int[] ids = new int[c.size()];
+            int i = 0;
+            for (String token : c) {
+                ids[i++] = Symbols.id(token);
+            }
+            statement.list().addAll(index, ids);
+            modCount++;
+            return ids.length > 0;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Artificial Intelligence, CSCI 580
+ * Spring 2019
+ */
+package geneticcode;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Supervises running gcc processes.
+ *
+ * Each compile is watched by a Job, which kills gcc and every process it
+ * started once the compile runs past Fitness.COMPILE_TIMEOUT_MS, or when the
+ * Compiler asks it to stop. The time each compile takes is counted in a
+ * histogram of fixed size, with the text of the slowest, so the slow tail of
+ * a generation can be reported however many compiles it runs.
+ *
+ */
+class Watchdog {
+
+    /**
+     * Why a compile was stopped early
+     */
+    enum Reason {
+        // Too many errors to survive selection
+        PRUNED,
+        // Past Fitness.ERROR_WORD_CEILING
+        CEILING,
+        // Past Fitness.COMPILE_TIMEOUT_MS
+        TIMEOUT,
+        // Past Fitness.STDERR_MAX_BYTES
+        OUTPUT
+    }
+
+    // Fires the timeouts
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread t = new Thread(task, "gcc-watchdog");
+        // Never keep the JVM alive once the GA is done
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Compiles finished since the last report
+    private static final Latencies latencies = new Latencies();
+    private static final AtomicLong stragglers = new AtomicLong();
+    // Compiles stopped early since the start, by reason
+    private static final AtomicLong[] stopped = new AtomicLong[Reason.values().length];
+
+    static {
+        for (int i = 0; i < stopped.length; i++) {
+            stopped[i] = new AtomicLong();
+        }
+    }
+
+    // Dummy constructor to prevent object instances
+    private Watchdog() {
+    }
+
+    /**
+     * Start watching a compile
+     *
+     * @param p the running gcc
+     * @param source the program text, kept to name the slowest compile
+     * @return the job to close once the compile is over
+     */
+    static Job watch(Process p, String source) {
+        return new Job(p, source, Fitness.COMPILE_TIMEOUT_MS);
+    }
+
+    /**
+     * Stop gcc and the compiler passes it started. The children are listed
+     * first, since they are lost once gcc is gone.
+     *
+     * @param p the running gcc
+     */
+    static void kill(Process p) {
+        p.descendants().forEach(ProcessHandle::destroyForcibly);
+        p.destroyForcibly();
+    }
+
+    /**
+     * Get the number of compiles stopped early for the given reason
+     *
+     * @param reason the reason
+     * @return the count since the start
+     */
+    static long getStopped(Reason reason) {
+        return stopped[reason.ordinal()].get();
+    }
+
+    /**
+     * Log the latency percentiles of the compiles since the last report, and
+     * start over
+     */
+    static void report() {
+        long killed = stragglers.getAndSet(0);
+        Logger logger = Logger.getLogger(Watchdog.class.getName());
+        synchronized (latencies) {
+            if (latencies.count > 0) {
+                logger.log(Level.INFO, "Compile latency over {0} compiles: p50 {1} ms, p90 {2} ms, p99 {3} ms, max {4} ms, {5} stragglers killed",
+                        new Object[]{latencies.count, latencies.millis(0.50), latencies.millis(0.90), latencies.millis(0.99),
+                            TimeUnit.NANOSECONDS.toMillis(latencies.slowest), killed});
+                logger.log(Level.FINER, "Slowest compile:\n{0}", latencies.slowestSource);
+            }
+            latencies.clear();
+        }
+    }
+
+    /**
+     * The latencies of finished compiles, counted in buckets of milliseconds
+     * that are exact below SUB_BUCKETS * 2 ms and widen with the latency
+     * above, each within 1 / SUB_BUCKETS of the latencies it holds. Only the
+     * text of the slowest compile is kept.
+     */
+    private static class Latencies {
+
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int EXACT = 2 * SUB_BUCKETS;
+
+        private final long[] counts = new long[EXACT + (Long.SIZE - SUB_BITS - 1) * SUB_BUCKETS];
+        private long count = 0;
+        private long slowest = -1;
+        private String slowestSource;
+
+        /**
+         * Count a compile
+         */
+        synchronized void add(long nanos, String source) {
+            counts[bucket(TimeUnit.NANOSECONDS.toMillis(nanos))]++;
+            count++;
+            if (nanos > slowest) {
+                slowest = nanos;
+                slowestSource = source;
+            }
+        }
+
+        /**
+         * Get a percentile of the latencies, by nearest rank, as the top of
+         * its bucket. The caller holds the lock.
+         *
+         * @param p the percentile, between 0 and 1
+         * @return the latency in milliseconds
+         */
+        long millis(double p) {
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(top(i), TimeUnit.NANOSECONDS.toMillis(slowest));
+                }
+            }
+            return TimeUnit.NANOSECONDS.toMillis(slowest);
+        }
+
+        /**
+         * Start over. The caller holds the lock.
+         */
+        void clear() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            slowest = -1;
+            slowestSource = null;
+        }
+
+        /**
+         * Get the bucket of a latency, from its highest bits
+         */
+        private static int bucket(long millis) {
+            if (millis < EXACT) {
+                return (int) Math.max(0, millis);
+            }
+            int shift = Long.SIZE - Long.numberOfLeadingZeros(millis) - 1 - SUB_BITS;
+            return EXACT + (shift - 1) * SUB_BUCKETS + (int) ((millis >> shift) - SUB_BUCKETS);
+        }
+
+        /**
+         * Get the highest latency a bucket holds
+         */
+        private static long top(int bucket) {
+            if (bucket < EXACT) {
+                return bucket;
+            }
+            int shift = (bucket - EXACT) / SUB_BUCKETS + 1;
+            long low = (long) (SUB_BUCKETS + (bucket - EXACT) % SUB_BUCKETS) << shift;
+            return low + (1L << shift) - 1;
+        }
+    }
+
+    /**
+     * One watched compile
+     */
+    static class Job implements AutoCloseable {
+
+        private final Process p;
+        private final String source;
+        private final long start = System.nanoTime();
+        private final ScheduledFuture<?> timeout;
+        private final AtomicReference<Reason> reason = new AtomicReference<>();
+
+        private Job(Process p, String source, long timeoutMs) {
+            this.p = p;
+            this.source = source;
+            timeout = timeoutMs > 0 ? timer.schedule(() -> kill(Reason.TIMEOUT), timeoutMs, TimeUnit.MILLISECONDS) : null;
+        }
+
+        /**
+         * Stop the compile, unless it was already stopped for another reason
+         *
+         * @param why the reason to stop
+         * @return true if this call stopped it
+         */
+        boolean kill(Reason why) {
+            if (!reason.compareAndSet(null, why)) {
+                return false;
+            }
+            stopped[why.ordinal()].incrementAndGet();
+            if (why == Reason.TIMEOUT || why == Reason.OUTPUT) {
+                stragglers.incrementAndGet();
+            }
+            Watchdog.kill(p);
+            return true;
+        }
+
+        /**
+         * Get the reason the compile was stopped
+         *
+         * @return the reason, or null if gcc ran to the end
+         */
+        Reason getReason() {
+            return reason.get();
+        }
+
+        /**
+         * Get how long the compile has run
+         *
+         * @return the time in milliseconds
+         */
+        long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+
+        /**
+         * Stop the timer, make sure gcc is gone, and record the latency
+         */
+        @Override
+        public void close() {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (p.isAlive()) {
+                Watchdog.kill(p);
+            }
+            latencies.add(System.nanoTime() - start, source);
+        }
+    }
+}